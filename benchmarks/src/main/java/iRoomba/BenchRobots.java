@@ -0,0 +1,80 @@
+package iRoomba;
+
+import java.io.IOException;
+
+/**
+ * Robots wired to canned responses, so the benchmarks measure the API and not
+ * the network.
+ */
+final class BenchRobots {
+
+	/** A realistic full_status.json body, with a few sensors set. */
+	static final byte[] FULL_STATUS;
+	/** A realistic status.json body. */
+	static final byte[] SIMPLE_STATUS;
+	static final byte[] COMMAND_RESULT;
+
+	static {
+		final VirtualDevice device = new VirtualDevice("Benchmark");
+		device.setSensor("cliff_front_right", true);
+		device.setSensor("bumper_left_state", true);
+		device.setSensor("dock_button", true);
+		device.setIRReading("IR_Omni", 161);
+		device.handle("/command.json?command=clean");
+
+		FULL_STATUS = device.handle("/full_status.json");
+		SIMPLE_STATUS = device.handle("/status.json");
+		COMMAND_RESULT = device.handle("/command.json?command=find_me");
+	}
+
+	private BenchRobots() {
+	}
+
+	/**
+	 * A Robot whose device answers instantly and whose pacer never waits.
+	 */
+	static Robot robot() {
+
+		final Robot robot = new Robot("benchmark", new Transport() {
+
+			@Override
+			public byte[] get(final String path) throws IOException {
+
+				if (path.startsWith("/full_status.json")) {
+					return FULL_STATUS;
+				}
+				if (path.startsWith("/status.json")) {
+					return SIMPLE_STATUS;
+				}
+				return COMMAND_RESULT;
+
+			}
+
+			@Override
+			public void close() {
+			}
+
+		});
+
+		for (final CommandClass commandClass : CommandClass.values()) {
+			robot.pacer().override(commandClass, new PacingPolicy(0, 0, 0, 0, 2.0, 1, 1000.0));
+		}
+
+		return robot;
+
+	}
+
+	/**
+	 * Keeps every section of what the Robot has fetched for good, so getter
+	 * benchmarks measure the getters and not a refetch every few hundred
+	 * milliseconds when a cache policy runs out.
+	 */
+	static void neverExpire(final Robot robot) {
+
+		for (final StatusSection section : StatusSection.values()) {
+			robot.cachePolicy(section, new CachePolicy(Long.MAX_VALUE, false));
+		}
+
+	}
+
+}
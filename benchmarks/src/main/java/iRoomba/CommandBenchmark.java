@@ -0,0 +1,62 @@
+package iRoomba;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building and dispatching commands through generalSend, with a device that
+ * answers instantly and no pacing, so only the client side is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+
+	@Param({ "180", "45" })
+	public int degrees;
+
+	private Robot robot;
+
+	@Setup
+	public void setUp() {
+
+		robot = BenchRobots.robot();
+
+	}
+
+	@Benchmark
+	public void drive() {
+
+		robot.drive(250, degrees);
+
+	}
+
+	@Benchmark
+	public void dock() {
+
+		robot.dock();
+
+	}
+
+	@Benchmark
+	public CommandClass classify() {
+
+		return CommandClass.of("/command.json?command=drive_only&degrees=" + degrees + "&speed=250");
+
+	}
+
+}
@@ -0,0 +1,75 @@
+package iRoomba;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The typed getters on data that has already been fetched, which is what a
+ * control loop calls on every tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetterBenchmark {
+
+	private Robot robot;
+
+	@Setup
+	public void setUp() {
+
+		robot = BenchRobots.robot();
+		BenchRobots.neverExpire(robot);
+		robot.statusUpdate(true);
+
+	}
+
+	@Benchmark
+	public boolean bool() {
+
+		return robot.needsEmptied();
+
+	}
+
+	@Benchmark
+	public int integer() {
+
+		return robot.voltage();
+
+	}
+
+	@Benchmark
+	public String string() {
+
+		return robot.TCName();
+
+	}
+
+	/** A typical tick: state, charge and a handful of sensors. */
+	@Benchmark
+	public void controlLoopTick(final Blackhole hole) {
+
+		hole.consume(robot.cleanerState());
+		hole.consume(robot.charge());
+		hole.consume(robot.isCleaning());
+		hole.consume(robot.detectsWall(false));
+		hole.consume(robot.detectsLightBump());
+		hole.consume(robot.detectsDirt());
+		hole.consume(robot.getIRReadings("omni"));
+
+	}
+
+}
@@ -0,0 +1,87 @@
+package iRoomba;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The string-selected sensor queries and the cleaner state translation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectorBenchmark {
+
+	private Robot robot;
+
+	@Setup
+	public void setUp() {
+
+		robot = BenchRobots.robot();
+		BenchRobots.neverExpire(robot);
+		robot.statusUpdate(true);
+
+	}
+
+	@Benchmark
+	public boolean cliffAny() {
+
+		return robot.detectsCliff("any");
+
+	}
+
+	@Benchmark
+	public boolean cliffFrontRight() {
+
+		return robot.detectsCliff("Front Right");
+
+	}
+
+	@Benchmark
+	public boolean bumperLeft() {
+
+		return robot.bumperPressed("l");
+
+	}
+
+	@Benchmark
+	public boolean buttonDock() {
+
+		return robot.buttonPressed("dock");
+
+	}
+
+	@Benchmark
+	public boolean cliffAnyTyped() {
+
+		return robot.detectsCliff(Cliff.ANY);
+
+	}
+
+	@Benchmark
+	public boolean cliffFrontRightTyped() {
+
+		return robot.detectsCliff(Cliff.FRONT_RIGHT);
+
+	}
+
+	@Benchmark
+	public String readableCleanerState() {
+
+		return robot.readableCleanerState();
+
+	}
+
+}
@@ -0,0 +1,54 @@
+package iRoomba;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fetching and parsing status.json and full_status.json.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusParsingBenchmark {
+
+	private Robot robot;
+
+	@Setup
+	public void setUp() {
+
+		robot = BenchRobots.robot();
+
+	}
+
+	@Benchmark
+	public Robot fullStatus() {
+
+		robot.statusUpdate(true);
+
+		return robot;
+
+	}
+
+	@Benchmark
+	public Robot simpleStatus() {
+
+		robot.statusUpdate(false);
+
+		return robot;
+
+	}
+
+}
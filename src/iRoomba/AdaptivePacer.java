@@ -0,0 +1,372 @@
+package iRoomba;
+
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides when a Robot may send its next request.
+ * <p>
+ * Each class of command keeps its own gap between requests and its own limit
+ * on requests in flight, counted over that class alone. Both follow the
+ * additive-increase, multiplicative-decrease rule described in
+ * {@link PacingPolicy}: a module that keeps up is sent requests faster and
+ * faster, while one that slows down or fails is quickly given more room.
+ * </p>
+ * <p>
+ * On top of that, only one command to command.json is in flight at a time,
+ * whatever its class, so a command is never overtaken by one issued after
+ * it. Only the status lane has an in-flight window that adapts; the other
+ * lanes adapt their gap alone.
+ * </p>
+ * <p>
+ * A request is made in three steps. A permit is taken with
+ * {@link #acquire(CommandClass)} or {@link #tryAcquire(CommandClass)}, the
+ * request is sent once its slot comes up, and the outcome is reported with
+ * {@link #onSuccess(CommandClass, long)} or {@link #onFailure(CommandClass)},
+ * which also returns the permit.
+ * </p>
+ */
+public class AdaptivePacer {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition released = lock.newCondition();
+	private final EnumMap<CommandClass, Lane> lanes = new EnumMap<CommandClass, Lane>(CommandClass.class);
+	/**
+	 * Whether a command, of any class but STATUS, is in flight. Only one is
+	 * allowed at a time, so commands reach the device in the order their
+	 * permits were taken.
+	 */
+	private boolean commandInFlight = false;
+
+	private volatile Runnable releaseListener = null;
+
+	public AdaptivePacer() {
+
+		for (final CommandClass commandClass : CommandClass.values()) {
+			lanes.put(commandClass, new Lane(PacingPolicy.defaults(commandClass)));
+		}
+
+	}
+
+	/**
+	 * Replaces the policy for one class of command. What has been learned
+	 * about the device is kept, but pulled within the new limits.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the policy allows more than one command of a class other
+	 *             than STATUS in flight, which the pacer never does.
+	 */
+	public void override(final CommandClass commandClass, final PacingPolicy policy) {
+
+		if (isCommand(commandClass) && policy.maxInFlight() > 1) {
+			throw new IllegalArgumentException("Commands are sent one at a time, so maxInFlight for "
+					+ commandClass + " must be 1");
+		}
+
+		lock.lock();
+		try {
+			lanes.get(commandClass).setPolicy(policy);
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	public PacingPolicy policy(final CommandClass commandClass) {
+
+		lock.lock();
+		try {
+			return lanes.get(commandClass).policy;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Takes a permit and reserves the next slot for a request, waiting for
+	 * both.
+	 */
+	public void acquire(final CommandClass commandClass) throws InterruptedException {
+
+		long delay;
+
+		lock.lockInterruptibly();
+		try {
+			while ((delay = reserve(commandClass)) < 0) {
+				released.await();
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (delay > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(delay);
+			} catch (final InterruptedException e) {
+				cancel(commandClass);
+				throw e;
+			}
+		}
+
+	}
+
+	/**
+	 * Takes a permit and reserves the next slot for a request without
+	 * waiting.
+	 *
+	 * @return Nanoseconds until the request may be sent, or -1 if too many
+	 *         requests are already in flight.
+	 */
+	public long tryAcquire(final CommandClass commandClass) {
+
+		lock.lock();
+		try {
+			return reserve(commandClass);
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Reports a response that arrived after the given round trip and returns
+	 * its permit.
+	 */
+	public void onSuccess(final CommandClass commandClass, final long roundTripNanos) {
+
+		lock.lock();
+		try {
+			lanes.get(commandClass).onSuccess(roundTripNanos, System.nanoTime());
+			release(commandClass);
+		} finally {
+			lock.unlock();
+		}
+
+		notifyListener();
+
+	}
+
+	/**
+	 * Reports a request that failed or timed out and returns its permit.
+	 */
+	public void onFailure(final CommandClass commandClass) {
+
+		lock.lock();
+		try {
+			lanes.get(commandClass).backOff(System.nanoTime());
+			release(commandClass);
+		} finally {
+			lock.unlock();
+		}
+
+		notifyListener();
+
+	}
+
+	/**
+	 * Returns the permit of a request that was never sent.
+	 */
+	public void cancel(final CommandClass commandClass) {
+
+		lock.lock();
+		try {
+			release(commandClass);
+		} finally {
+			lock.unlock();
+		}
+
+		notifyListener();
+
+	}
+
+	/** The current gap between requests of a class in milliseconds. */
+	public double gapMillis(final CommandClass commandClass) {
+
+		lock.lock();
+		try {
+			return lanes.get(commandClass).gap / 1e6;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/** The current limit on requests of a class in flight. */
+	public int inFlightLimit(final CommandClass commandClass) {
+
+		lock.lock();
+		try {
+			return lanes.get(commandClass).limit();
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/** The smoothed round trip of a class in milliseconds, or 0 if unknown. */
+	public double roundTripMillis(final CommandClass commandClass) {
+
+		lock.lock();
+		try {
+			return lanes.get(commandClass).smoothedRtt / 1e6;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Sets something to be run whenever a permit is returned, so that work
+	 * waiting on {@link #tryAcquire(CommandClass)} can try again.
+	 */
+	void setReleaseListener(final Runnable listener) {
+
+		releaseListener = listener;
+
+	}
+
+	private long reserve(final CommandClass commandClass) {
+
+		final Lane lane = lanes.get(commandClass);
+
+		if (lane.inFlight >= lane.limit() || (isCommand(commandClass) && commandInFlight)) {
+			return -1;
+		}
+
+		lane.inFlight++;
+		if (isCommand(commandClass)) {
+			commandInFlight = true;
+		}
+
+		final long now = System.nanoTime();
+		final long slot = Math.max(now, lane.nextSendAt);
+		lane.nextSendAt = slot + (long) lane.gap;
+
+		return slot - now;
+
+	}
+
+	private void release(final CommandClass commandClass) {
+
+		final Lane lane = lanes.get(commandClass);
+
+		if (lane.inFlight > 0) {
+			lane.inFlight--;
+			if (isCommand(commandClass)) {
+				commandInFlight = false;
+			}
+		}
+		released.signalAll();
+
+	}
+
+	/**
+	 * Whether requests of a class change what the device does. Those are
+	 * sent one at a time; status fetches may overlap them and each other.
+	 */
+	private static boolean isCommand(final CommandClass commandClass) {
+
+		return commandClass != CommandClass.STATUS;
+
+	}
+
+	private void notifyListener() {
+
+		final Runnable listener = releaseListener;
+
+		if (listener != null) {
+			listener.run();
+		}
+
+	}
+
+	/**
+	 * What the pacer has learned about one class of command.
+	 */
+	private static final class Lane {
+
+		/** Jitter below this is never taken as a sign of overload. */
+		private static final long SLOW_MARGIN = TimeUnit.MILLISECONDS.toNanos(20);
+
+		PacingPolicy policy;
+		/** Nanoseconds between requests. */
+		double gap;
+		/** Requests allowed in flight; fractional so it can grow slowly. */
+		double window;
+		/** Requests of this class taken a permit for and not yet answered. */
+		int inFlight = 0;
+		long nextSendAt = 0;
+		double smoothedRtt = 0;
+		long minRtt = Long.MAX_VALUE;
+		long lastBackOff = 0;
+
+		Lane(final PacingPolicy policy) {
+
+			this.policy = policy;
+			this.gap = TimeUnit.MILLISECONDS.toNanos(policy.initialGap());
+			this.window = 1;
+
+		}
+
+		void setPolicy(final PacingPolicy newPolicy) {
+
+			policy = newPolicy;
+			gap = clampGap(gap);
+			window = Math.min(window, newPolicy.maxInFlight());
+
+		}
+
+		int limit() {
+
+			return (int) window;
+
+		}
+
+		void onSuccess(final long rtt, final long now) {
+
+			smoothedRtt = smoothedRtt == 0 ? rtt : smoothedRtt * 0.875 + rtt * 0.125;
+			minRtt = Math.min(minRtt, rtt);
+
+			if (rtt > minRtt * policy.slowFactor() + SLOW_MARGIN) {
+				backOff(now);
+				// Let the baseline creep up, so that a device which has
+				// simply become slower is not backed off forever.
+				minRtt += (rtt - minRtt) / 8;
+				return;
+			}
+
+			gap = clampGap(gap - TimeUnit.MILLISECONDS.toNanos(policy.step()));
+			window = Math.min(policy.maxInFlight(), window + 1 / window);
+
+		}
+
+		void backOff(final long now) {
+
+			// One slow round trip is usually followed by a few more caused by
+			// the same congestion, so back off at most once per round trip.
+			if (lastBackOff != 0 && now - lastBackOff < smoothedRtt) {
+				return;
+			}
+			lastBackOff = now;
+
+			final double floor = TimeUnit.MILLISECONDS.toNanos(Math.max(policy.step(), 1));
+			gap = clampGap(Math.max(gap * policy.backoff(), floor));
+			window = Math.max(1, window / 2);
+
+		}
+
+		private double clampGap(final double proposed) {
+
+			final double min = TimeUnit.MILLISECONDS.toNanos(policy.minGap());
+			final double max = TimeUnit.MILLISECONDS.toNanos(policy.maxGap());
+
+			return Math.min(max, Math.max(min, proposed));
+
+		}
+
+	}
+
+}
@@ -0,0 +1,662 @@
+package iRoomba;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * A non-blocking counterpart to {@link Robot}.
+ * <p>
+ * Every command and status update returns immediately with a
+ * CompletableFuture. Requests to one device still go out in the order they
+ * were made and are spaced out by the Robot's {@link AdaptivePacer}, but the
+ * waiting is done by a shared timer instead of by the calling thread. One
+ * thread can therefore drive as many Robots as it likes.
+ * </p>
+ * <p>
+ * Obtain one through {@link Robot#async()}.
+ * </p>
+ */
+public class AsyncRobot {
+
+	private final Robot robot;
+	private final AdaptivePacer pacer;
+
+	private final ArrayDeque<Operation<?>> queue = new ArrayDeque<Operation<?>>();
+	/** Whether the head of the queue is being dispatched or waited for. */
+	private boolean busy = false;
+	/** Nothing else is sent before this time, so that a tune can finish. */
+	private long holdUntil = System.nanoTime();
+	/** Drive commands that were replaced by a newer one before being sent. */
+	private final AtomicLong superseded = new AtomicLong();
+
+	AsyncRobot(final Robot robot) {
+
+		this.robot = robot;
+		this.pacer = robot.pacer();
+
+		pacer.setReleaseListener(new Runnable() {
+
+			@Override
+			public void run() {
+
+				resume();
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * The blocking Robot this one sends through. Its getters read the data
+	 * fetched by {@link #statusUpdate(boolean)}.
+	 */
+	public Robot robot() {
+
+		return robot;
+
+	}
+
+	// Information Handling \\
+	/**
+	 * Updates the information gathered by the Thinking Cleaner device.
+	 *
+	 * @param wantFullStatus
+	 *            Fetch the full status update?
+	 * @return Completes with the Robot once its data has been updated.
+	 */
+	public CompletableFuture<Robot> statusUpdate(final boolean wantFullStatus) {
+
+		return submit(new Operation<Robot>(CommandClass.STATUS, 0) {
+
+			@Override
+			Robot call() throws IOException {
+
+				robot.fetch(wantFullStatus, true);
+
+				return robot;
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * Updates the information gathered by the Thinking Cleaner device,
+	 * fetching the full status only if the getters called lately need it.
+	 *
+	 * @see Robot#statusUpdate()
+	 */
+	public CompletableFuture<Robot> statusUpdate() {
+
+		return statusUpdate(robot.chooseEndpoint() == StatusEndpoint.FULL);
+
+	}
+
+	// Utility Methods \\
+	/**
+	 * Pass any single custom command along to the Robot programmatically.
+	 *
+	 * @param command
+	 *            The command that is to be passed to the Thinking Cleaner web
+	 *            API.
+	 */
+	public CompletableFuture<Void> send(final String command) {
+
+		return request('/' + command, 0);
+
+	}
+
+	/**
+	 * Pass a command, specifically, along to the Robot.
+	 * <p>
+	 * A drive_only or drivestop command replaces any such command that is
+	 * still waiting to be sent, so the device always gets the most recent
+	 * steering rather than working through a backlog. The future of a
+	 * replaced command completes together with the command that replaced it.
+	 * Every other command is sent exactly once and in order.
+	 * </p>
+	 * <p>
+	 * A command is only sent once the one before it has been answered or has
+	 * failed, so two commands are never on their way to the device at once.
+	 * Status updates may still overlap them.
+	 * </p>
+	 */
+	public CompletableFuture<Void> generalSend(final String genericCommand) {
+
+		return generalSend(genericCommand, 0);
+
+	}
+
+	private CompletableFuture<Void> generalSend(final String genericCommand, final long hold) {
+
+		return request("/command.json?command=" + genericCommand, hold);
+
+	}
+
+	private CompletableFuture<Void> request(final String path, final long hold) {
+
+		if (hold == 0 && (path.contains("command=drive_only") || path.endsWith("command=drivestop"))) {
+			return submit(new Motion(path, true));
+		}
+
+		return submit(new Request(path, hold));
+
+	}
+
+	CompletableFuture<Void> sendPath(final String path) {
+
+		return request(path, 0);
+
+	}
+
+	/**
+	 * Sends a drivestop that replaces any movement still queued but that no
+	 * later movement can replace, for ending a {@link MotionHold}.
+	 */
+	CompletableFuture<Void> finalStop() {
+
+		return submit(new Motion("/command.json?command=drivestop", false));
+
+	}
+
+	/**
+	 * Keeps repeating a movement command for a length of time, then sends a
+	 * drivestop. The repeats go out every {@link MotionHold#DEFAULT_INTERVAL}
+	 * milliseconds.
+	 *
+	 * @param genericCommand
+	 *            A command such as "forward" or
+	 *            "drive_only&amp;degrees=180&amp;speed=200".
+	 * @param duration
+	 *            Milliseconds until the Robot is stopped.
+	 */
+	public MotionHold hold(final String genericCommand, final long duration) {
+
+		return hold(genericCommand, duration, MotionHold.DEFAULT_INTERVAL);
+
+	}
+
+	/**
+	 * Keeps repeating a movement command for a length of time, then sends a
+	 * drivestop.
+	 *
+	 * @param interval
+	 *            Milliseconds between repeats.
+	 */
+	public MotionHold hold(final String genericCommand, final long duration, final long interval) {
+
+		return holdPath("/command.json?command=" + genericCommand, duration, interval);
+
+	}
+
+	MotionHold holdPath(final String path, final long duration, final long interval) {
+
+		return MotionHold.start(this, path, duration, interval);
+
+	}
+
+	/**
+	 * The number of drive commands that were dropped because a newer one
+	 * arrived before they could be sent.
+	 */
+	public long supersededMotions() {
+
+		return superseded.get();
+
+	}
+
+	// Basic Movement Methods \\
+	/**
+	 * @see Robot#drive(int, int)
+	 */
+	public CompletableFuture<Void> drive(final int speed, final int degrees) {
+
+		return generalSend("drive_only&degrees=" + degrees + "&speed=" + speed);
+
+	}
+
+	/**
+	 * @see Robot#forward()
+	 */
+	public CompletableFuture<Void> forward() {
+
+		return generalSend("forward");
+
+	}
+
+	/**
+	 * @see Robot#forward(int)
+	 */
+	public CompletableFuture<Void> forward(final int speed) {
+
+		return generalSend("drive_only&degrees=180&speed=" + speed);
+
+	}
+
+	/**
+	 * @see Robot#backward()
+	 */
+	public CompletableFuture<Void> backward() {
+
+		return generalSend("drive_only&degrees=180&speed=-250");
+
+	}
+
+	/**
+	 * @see Robot#backward(int)
+	 */
+	public CompletableFuture<Void> backward(final int speed) {
+
+		return generalSend("drive_only&degrees=180&speed=-" + speed);
+
+	}
+
+	/**
+	 * @see Robot#left()
+	 */
+	public CompletableFuture<Void> left() {
+
+		return generalSend("spinleft");
+
+	}
+
+	/**
+	 * @see Robot#left(int)
+	 */
+	public CompletableFuture<Void> left(final int speed) {
+
+		return generalSend("drive_only&degrees=360&speed=" + speed);
+
+	}
+
+	/**
+	 * @see Robot#right()
+	 */
+	public CompletableFuture<Void> right() {
+
+		return generalSend("spinright");
+
+	}
+
+	/**
+	 * @see Robot#right(int)
+	 */
+	public CompletableFuture<Void> right(final int speed) {
+
+		return generalSend("drive_only&degrees=0&speed=" + speed);
+
+	}
+
+	/**
+	 * Rotate ~180 degrees. Later commands wait until the second spin has had
+	 * time to finish.
+	 *
+	 * @see Robot#turnAround()
+	 */
+	public CompletableFuture<Void> turnAround() {
+
+		generalSend("spinleft", 600);
+
+		return generalSend("spinleft", 1200);
+
+	}
+
+	/**
+	 * @see Robot#driveLeft()
+	 */
+	public CompletableFuture<Void> driveLeft() {
+
+		return generalSend("driveleft");
+
+	}
+
+	/**
+	 * @see Robot#driveRight()
+	 */
+	public CompletableFuture<Void> driveRight() {
+
+		return generalSend("driveright");
+
+	}
+
+	/**
+	 * @see Robot#stop()
+	 */
+	public CompletableFuture<Void> stop() {
+
+		return generalSend("drivestop");
+
+	}
+
+	// Advanced Functions \\
+	/**
+	 * @see Robot#dock()
+	 */
+	public CompletableFuture<Void> dock() {
+
+		return generalSend("dock");
+
+	}
+
+	/**
+	 * @see Robot#leaveHome()
+	 */
+	public CompletableFuture<Void> leaveHome() {
+
+		return generalSend("leavehomebase");
+
+	}
+
+	/**
+	 * Play a short tune. Later commands wait until the tune is over.
+	 */
+	public CompletableFuture<Void> beep() {
+
+		return generalSend("find_me", 5000);
+
+	}
+
+	/**
+	 * @see Robot#shutdown()
+	 */
+	public CompletableFuture<Void> shutdown() {
+
+		return generalSend("poweroff");
+
+	}
+
+	// Cleaning Methods \\
+	/**
+	 * @see Robot#clean()
+	 */
+	public CompletableFuture<Void> clean() {
+
+		return generalSend("clean");
+
+	}
+
+	/**
+	 * @see Robot#spotClean()
+	 */
+	public CompletableFuture<Void> spotClean() {
+
+		return generalSend("spot");
+
+	}
+
+	/**
+	 * @see Robot#maxClean()
+	 */
+	public CompletableFuture<Void> maxClean() {
+
+		return generalSend("max");
+
+	}
+
+	/**
+	 * @see Robot#delayedClean()
+	 */
+	public CompletableFuture<Void> delayedClean() {
+
+		return generalSend("delayedclean");
+
+	}
+
+	/**
+	 * @see Robot#delayedClean(int)
+	 */
+	public CompletableFuture<Void> delayedClean(final int minutes) {
+
+		if (minutes < 30 || minutes > 240) {
+			final CompletableFuture<Void> rejected = new CompletableFuture<Void>();
+			rejected.completeExceptionally(new IllegalArgumentException("minutes must be between 30 and 240"));
+			return rejected;
+		}
+
+		return generalSend("DelayedClean&minutes=" + minutes);
+
+	}
+
+	// Dispatching \\
+	private <T> CompletableFuture<T> submit(final Operation<T> operation) {
+
+		final boolean start;
+		Operation<?> replaced = null;
+
+		synchronized (queue) {
+			// Only the tail can be replaced, which keeps motion in order with
+			// the commands around it.
+			if (operation instanceof Motion && queue.peekLast() instanceof Motion
+					&& ((Motion) queue.peekLast()).replaceable) {
+				replaced = queue.pollLast();
+			}
+			queue.addLast(operation);
+			start = !busy;
+			busy = true;
+		}
+
+		if (replaced != null) {
+			superseded.incrementAndGet();
+			((Motion) replaced).supersededBy((Motion) operation);
+		}
+
+		if (start) {
+			dispatchNext();
+		}
+
+		return operation.future;
+
+	}
+
+	/**
+	 * Restarts dispatching after the pacer returned a permit, in case the
+	 * queue stalled waiting for one.
+	 */
+	private void resume() {
+
+		synchronized (queue) {
+			if (busy || queue.isEmpty()) {
+				return;
+			}
+			busy = true;
+		}
+
+		dispatchNext();
+
+	}
+
+	/**
+	 * Reserves a slot with the pacer for the operation at the head of the
+	 * queue and has the timer send it when the slot comes up.
+	 * <p>
+	 * The head stays in the queue until then, so a drive command waiting for
+	 * its slot can still be replaced by a newer one. The replacement is of the
+	 * same class, so the reserved slot still fits it.
+	 * </p>
+	 * <p>
+	 * The pacer gives out one command permit at a time, so a command at the
+	 * head waits here until the one before it has landed, even though that
+	 * one was handed to the I/O pool already.
+	 * </p>
+	 */
+	private void dispatchNext() {
+
+		final long delay;
+
+		synchronized (queue) {
+			final Operation<?> head = queue.peekFirst();
+			if (head == null) {
+				busy = false;
+				return;
+			}
+
+			final long slot = pacer.tryAcquire(head.commandClass);
+			if (slot < 0) {
+				// Too much is in flight, or another command is;
+				// resume() carries on once it lands.
+				busy = false;
+				return;
+			}
+
+			final long now = System.nanoTime();
+			delay = Math.max(slot, holdUntil - now);
+			holdUntil = now + delay + TimeUnit.MILLISECONDS.toNanos(head.hold);
+		}
+
+		final Runnable fire = new Runnable() {
+
+			@Override
+			public void run() {
+
+				final Operation<?> operation;
+
+				synchronized (queue) {
+					operation = queue.pollFirst();
+				}
+
+				send(operation);
+				dispatchNext();
+
+			}
+
+		};
+
+		if (delay <= 0) {
+			fire.run();
+		} else {
+			RobotExecutors.scheduler().schedule(fire, delay, TimeUnit.NANOSECONDS);
+		}
+
+	}
+
+	private void send(final Operation<?> operation) {
+
+		try {
+			RobotExecutors.io().execute(new Runnable() {
+
+				@Override
+				public void run() {
+
+					operation.run();
+
+				}
+
+			});
+		} catch (final RejectedExecutionException e) {
+			pacer.cancel(operation.commandClass);
+			operation.future.completeExceptionally(e);
+		}
+
+	}
+
+	/**
+	 * A request waiting for its turn to be sent to the device.
+	 */
+	private abstract class Operation<T> {
+
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		final CommandClass commandClass;
+		/** Milliseconds nothing else may be sent after this operation. */
+		final long hold;
+
+		Operation(final CommandClass commandClass, final long hold) {
+
+			this.commandClass = commandClass;
+			this.hold = hold;
+
+		}
+
+		/**
+		 * Performs the request. Implementations must hand the outcome to the
+		 * pacer, which {@link Robot#timedGet(CommandClass, String)} does.
+		 */
+		abstract T call() throws IOException;
+
+		void run() {
+
+			if (future.isDone()) {
+				// Cancelled by the caller before its slot came up.
+				pacer.cancel(commandClass);
+				return;
+			}
+
+			try {
+				future.complete(call());
+			} catch (final IOException | RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+
+		}
+
+	}
+
+	/**
+	 * A command sent to command.json.
+	 */
+	private class Request extends Operation<Void> {
+
+		final String path;
+
+		Request(final String path, final long hold) {
+
+			super(CommandClass.of(path), hold);
+			this.path = path;
+
+		}
+
+		@Override
+		Void call() throws IOException {
+
+			robot.timedGet(commandClass, path);
+
+			return null;
+
+		}
+
+	}
+
+	/**
+	 * A drive_only or drivestop command, which only matters until a newer one
+	 * is given.
+	 */
+	private final class Motion extends Request {
+
+		/** False for a drivestop that must reach the device as it is. */
+		final boolean replaceable;
+
+		Motion(final String path, final boolean replaceable) {
+
+			super(path, 0);
+			this.replaceable = replaceable;
+
+		}
+
+		void supersededBy(final Motion newer) {
+
+			newer.future.whenComplete(new BiConsumer<Void, Throwable>() {
+
+				@Override
+				public void accept(final Void result, final Throwable failure) {
+
+					if (failure != null) {
+						future.completeExceptionally(failure);
+					} else {
+						future.complete(result);
+					}
+
+				}
+
+			});
+
+		}
+
+	}
+
+}
@@ -0,0 +1,25 @@
+package iRoomba;
+
+/**
+ * The outcome of sending one command to many Robots at once, as returned by
+ * {@link Fleet#broadcast(String, int, long, long)}.
+ */
+public final class BroadcastResult extends FleetBatch {
+
+	private final String command;
+
+	BroadcastResult(final String command, final Robot[] robots) {
+
+		super(robots);
+		this.command = command;
+
+	}
+
+	/** The command that was sent, such as "dock". */
+	public String command() {
+
+		return command;
+
+	}
+
+}
@@ -0,0 +1,49 @@
+package iRoomba;
+
+/**
+ * The sides of the Roomba's front bumper.
+ */
+public enum Bumper {
+
+	/** The bumper was pressed anywhere. */
+	ANY(StatusSnapshot.BUMPERS),
+	LEFT(1L << StatusSnapshot.BUMPER_LEFT),
+	RIGHT(1L << StatusSnapshot.BUMPER_RIGHT);
+
+	final long mask;
+
+	private Bumper(final long mask) {
+
+		this.mask = mask;
+
+	}
+
+	/**
+	 * Reads the names accepted by {@link Robot#bumperPressed(String)}, such
+	 * as "any", "l" or "right".
+	 *
+	 * @return The side, or null if the name is not known.
+	 */
+	public static Bumper of(final String name) {
+
+		switch (name.toLowerCase()) {
+		case "any":
+		case "all":
+		case "a":
+			return ANY;
+
+		case "left":
+		case "l":
+			return LEFT;
+
+		case "right":
+		case "r":
+			return RIGHT;
+
+		default:
+			return null;
+		}
+
+	}
+
+}
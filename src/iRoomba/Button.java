@@ -0,0 +1,60 @@
+package iRoomba;
+
+/**
+ * The buttons on top of the Roomba.
+ */
+public enum Button {
+
+	/** Any one of the buttons. */
+	ANY(StatusSnapshot.BUTTONS),
+	CLEAN(1L << StatusSnapshot.CLEAN_BUTTON),
+	SPOT(1L << StatusSnapshot.SPOT_BUTTON),
+	DOCK(1L << StatusSnapshot.DOCK_BUTTON);
+
+	final long mask;
+
+	private Button(final long mask) {
+
+		this.mask = mask;
+
+	}
+
+	/**
+	 * Reads the names accepted by {@link Robot#buttonPressed(String)}, such
+	 * as "any", "c" or "dock button".
+	 *
+	 * @return The button, or null if the name is not known.
+	 */
+	public static Button of(final String name) {
+
+		switch (name.toLowerCase()) {
+		case "a":
+		case "any":
+		case "all":
+			return ANY;
+
+		case "c":
+		case "cln":
+		case "clean":
+		case "clean button":
+			return CLEAN;
+
+		case "s":
+		case "spt":
+		case "spot":
+		case "spot button":
+			return SPOT;
+
+		case "d":
+		case "dck":
+		case "dock":
+		case "dock button":
+			return DOCK;
+
+		default:
+			return null;
+		}
+
+	}
+
+}
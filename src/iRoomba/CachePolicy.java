@@ -0,0 +1,74 @@
+package iRoomba;
+
+/**
+ * How long a Robot may keep answering from the status it already has for one
+ * {@link StatusSection} before a getter fetches it again.
+ * <p>
+ * When a fetch fails the Robot falls back on what it has. A strict section
+ * will not do that silently: once its data is older than {@code maxAge} its
+ * getters throw a {@link StaleStatusException} instead.
+ * </p>
+ */
+public final class CachePolicy {
+
+	private final long maxAge;
+	private final boolean strict;
+
+	/**
+	 * @param maxAge
+	 *            Milliseconds the data may age before it is fetched again.
+	 * @param strict
+	 *            Whether data older than this may never be returned.
+	 */
+	public CachePolicy(final long maxAge, final boolean strict) {
+
+		if (maxAge < 0) {
+			throw new IllegalArgumentException("maxAge must not be negative");
+		}
+
+		this.maxAge = maxAge;
+		this.strict = strict;
+
+	}
+
+	/**
+	 * The policy used for a section unless it has been overridden. Firmware
+	 * and webview settings are kept for an hour, sensors and buttons for a
+	 * quarter of a second, and sensors and buttons are strict.
+	 */
+	public static CachePolicy defaults(final StatusSection section) {
+
+		switch (section) {
+		case FIRMWARE:
+		case WEBVIEW:
+			return new CachePolicy(3600000, false);
+
+		case TC_STATUS:
+			return new CachePolicy(60000, false);
+
+		case POWER_STATUS:
+			return new CachePolicy(5000, false);
+
+		case BUTTONS:
+		case SENSORS:
+			return new CachePolicy(250, true);
+
+		default:
+			return new CachePolicy(1000, false);
+		}
+
+	}
+
+	public long maxAge() {
+
+		return maxAge;
+
+	}
+
+	public boolean isStrict() {
+
+		return strict;
+
+	}
+
+}
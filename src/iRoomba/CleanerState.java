@@ -0,0 +1,143 @@
+package iRoomba;
+
+/**
+ * The states a Thinking Cleaner reports in its cleaner_state field.
+ * <p>
+ * Each state has a fixed {@link #id()}, which is what telemetry files store.
+ * A new state must take an id no other state has had, wherever it is put in
+ * the list.
+ * </p>
+ */
+public enum CleanerState {
+
+	BASE("st_base", 0, "At homebase."),
+	BASE_RECON("st_base_recon", 1, "At homebase, reconditioning charging."),
+	BASE_FULL("st_base_full", 2, "At homebase, charging."),
+	BASE_TRICKLE("st_base_trickle", 3, "At homebase, trickle charging."),
+	BASE_WAIT("st_base_wait", 4, "At homebase, waiting."),
+	PLUG("st_plug", 5, "Plugged in."),
+	PLUG_RECON("st_plug_recon", 6, "Plugged in, reconditioning charging."),
+	PLUG_FULL("st_plug_full", 7, "Plugged in, charging."),
+	PLUG_TRICKLE("st_plug_trickle", 8, "Plugged in, trickle charging."),
+	PLUG_WAIT("st_plug_wait", 9, "Plugged in, waiting."),
+	STOPPED("st_stopped", 10, "Stopped."),
+	CLEAN("st_clean", 11, "Cleaning."),
+	CLEANSTOP("st_cleanstop", 12, "Done cleaning."),
+	CLEAN_SPOT("st_clean_spot", 13, "Cleaning spot."),
+	CLEAN_MAX("st_clean_max", 14, "Max cleaning."),
+	DELAYED("st_delayed", 15, "Delayed cleaning."),
+	DOCK("st_dock", 16, "Docking."),
+	PICKUP("st_pickup", 17, "Picked up."),
+	REMOTE("st_remote", 18, "Being controlled."),
+	WAIT("st_wait", 19, "Waiting."),
+	OFF("st_off", 20, "Turned off."),
+	ERROR("st_error", 21, "Error"),
+	LOCATE("st_locate", 22, "Locating."),
+	UNKNOWN("st_unknown", 23, "Unknown.");
+
+	private static final CleanerState[] STATES = values();
+	private static final CleanerState[] BY_ID = indexById();
+
+	private final String code;
+	private final int id;
+	private final String description;
+
+	private CleanerState(final String code, final int id, final String description) {
+
+		this.code = code;
+		this.id = id;
+		this.description = description;
+
+	}
+
+	/** The code used by the device, such as "st_base". */
+	public String code() {
+
+		return code;
+
+	}
+
+	/**
+	 * A number for the state that never changes, for storing it. Unlike the
+	 * ordinal, it stays the same when states are added or reordered.
+	 */
+	public int id() {
+
+		return id;
+
+	}
+
+	/** The state with an {@link #id()}, or null if there is none. */
+	public static CleanerState byId(final int id) {
+
+		return id < 0 || id >= BY_ID.length ? null : BY_ID[id];
+
+	}
+
+	/** A human-readable translation, such as "At homebase." */
+	public String description() {
+
+		return description;
+
+	}
+
+	private static CleanerState[] indexById() {
+
+		int max = 0;
+		for (final CleanerState state : STATES) {
+			max = Math.max(max, state.id);
+		}
+
+		final CleanerState[] byId = new CleanerState[max + 1];
+		for (final CleanerState state : STATES) {
+			if (byId[state.id] != null) {
+				throw new IllegalStateException("Two cleaner states share id " + state.id);
+			}
+			byId[state.id] = state;
+		}
+
+		return byId;
+
+	}
+
+	/**
+	 * Finds the state for a code. Codes the API does not know about are
+	 * reported as {@link #UNKNOWN}.
+	 */
+	public static CleanerState of(final String code) {
+
+		for (final CleanerState state : STATES) {
+			if (state.code.equals(code)) {
+				return state;
+			}
+		}
+
+		return UNKNOWN;
+
+	}
+
+	/**
+	 * Finds the state for a code held in part of a char array, without making
+	 * a String of it first.
+	 */
+	static CleanerState of(final char[] chars, final int length) {
+
+		for (final CleanerState state : STATES) {
+			final String code = state.code;
+			if (code.length() != length) {
+				continue;
+			}
+			int i = 0;
+			while (i < length && code.charAt(i) == chars[i]) {
+				i++;
+			}
+			if (i == length) {
+				return state;
+			}
+		}
+
+		return UNKNOWN;
+
+	}
+
+}
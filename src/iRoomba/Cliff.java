@@ -0,0 +1,59 @@
+package iRoomba;
+
+/**
+ * The cliff sensors under the front of the Roomba.
+ */
+public enum Cliff {
+
+	/** Any of the four sensors. */
+	ANY(StatusSnapshot.CLIFFS),
+	LEFT(1L << StatusSnapshot.CLIFF_LEFT),
+	FRONT_LEFT(1L << StatusSnapshot.CLIFF_FRONT_LEFT),
+	FRONT_RIGHT(1L << StatusSnapshot.CLIFF_FRONT_RIGHT),
+	RIGHT(1L << StatusSnapshot.CLIFF_RIGHT);
+
+	final long mask;
+
+	private Cliff(final long mask) {
+
+		this.mask = mask;
+
+	}
+
+	/**
+	 * Reads the names accepted by {@link Robot#detectsCliff(String)}, such as
+	 * "any", "fl" or "front right".
+	 *
+	 * @return The sensor, or null if the name is not known.
+	 */
+	public static Cliff of(final String name) {
+
+		switch (name.toLowerCase()) {
+		case "any":
+		case "all":
+		case "a":
+			return ANY;
+
+		case "left":
+		case "l":
+			return LEFT;
+
+		case "front left":
+		case "fl":
+			return FRONT_LEFT;
+
+		case "front right":
+		case "fr":
+			return FRONT_RIGHT;
+
+		case "right":
+		case "r":
+			return RIGHT;
+
+		default:
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,58 @@
+package iRoomba;
+
+/**
+ * Groups the requests a Robot makes by how the device should be paced for
+ * them.
+ */
+public enum CommandClass {
+
+	/** Driving and steering: drive_only, forward, spins and drivestop. */
+	DRIVE,
+	/** Starting or ending a cycle: clean, spot, max, delayed clean and dock. */
+	CLEAN,
+	/** Fetching status.json or full_status.json. */
+	STATUS,
+	/** Everything else, such as find_me, poweroff and mode switches. */
+	OTHER;
+
+	/**
+	 * Works out the class of a request from its path, such as
+	 * "/command.json?command=spinleft" or "/full_status.json".
+	 */
+	public static CommandClass of(final String path) {
+
+		final int start = path.indexOf("command=");
+
+		if (start < 0) {
+			return path.contains("status.json") ? STATUS : OTHER;
+		}
+
+		final int end = path.indexOf('&', start);
+		final String command = path.substring(start + "command=".length(), end < 0 ? path.length() : end);
+
+		switch (command.toLowerCase()) {
+		case "drive_only":
+		case "drive":
+		case "forward":
+		case "spinleft":
+		case "spinright":
+		case "driveleft":
+		case "driveright":
+		case "drivestop":
+			return DRIVE;
+
+		case "clean":
+		case "spot":
+		case "max":
+		case "delayedclean":
+		case "dock":
+		case "leavehomebase":
+			return CLEAN;
+
+		default:
+			return OTHER;
+		}
+
+	}
+
+}
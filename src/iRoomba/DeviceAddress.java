@@ -0,0 +1,78 @@
+package iRoomba;
+
+/**
+ * The parts of a Robot address such as "192.168.1.100", "10.0.0.5:8080" or
+ * "localhost:8080/robot7".
+ * <p>
+ * Anything after the first '/' is treated as a path prefix which is placed in
+ * front of every request path.
+ * </p>
+ */
+final class DeviceAddress {
+
+	final String host;
+	final int port;
+	final String prefix;
+	/** The value sent in the Host header of every request. */
+	final String authority;
+
+	private DeviceAddress(final String host, final int port, final String prefix, final String authority) {
+
+		this.host = host;
+		this.port = port;
+		this.prefix = prefix;
+		this.authority = authority;
+
+	}
+
+	static DeviceAddress parse(String address) {
+
+		if (address.startsWith("http://")) {
+			address = address.substring("http://".length());
+		}
+
+		String prefix = "";
+		final int slash = address.indexOf('/');
+		if (slash >= 0) {
+			prefix = address.substring(slash);
+			address = address.substring(0, slash);
+			if (prefix.endsWith("/")) {
+				prefix = prefix.substring(0, prefix.length() - 1);
+			}
+		}
+
+		String host = address;
+		int port = 80;
+		final int colon = address.lastIndexOf(':');
+		if (colon >= 0 && address.indexOf(']') < colon) {
+			host = address.substring(0, colon);
+			port = Integer.parseInt(address.substring(colon + 1));
+		}
+		if (host.startsWith("[") && host.endsWith("]")) {
+			host = host.substring(1, host.length() - 1);
+		}
+
+		return new DeviceAddress(host, port, prefix, address);
+
+	}
+
+	/**
+	 * Builds the request line and headers for a GET of the given path.
+	 */
+	byte[] encodeGet(final String path) {
+
+		final String request = "GET " + prefix + path + " HTTP/1.1\r\n"
+				+ "Host: " + authority + "\r\n"
+				+ "Connection: keep-alive\r\n"
+				+ "\r\n";
+
+		final byte[] bytes = new byte[request.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) request.charAt(i);
+		}
+
+		return bytes;
+
+	}
+
+}
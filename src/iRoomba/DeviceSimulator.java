@@ -0,0 +1,341 @@
+package iRoomba;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves any number of {@link VirtualDevice}s over HTTP from inside the JVM,
+ * so that Robots can be run without a real module on the network.
+ * <p>
+ * Every device lives under its own path on one local port. A device added
+ * as "jim" answers at "/jim/status.json", "/jim/full_status.json" and
+ * "/jim/command.json", so a Robot created with {@link #address(String)}
+ * reaches it without any changes.
+ * </p>
+ * <p>
+ * Responses can be slowed down by a fixed latency plus random jitter, fail
+ * with an HTTP 500, or be dropped altogether. Delayed responses are finished
+ * by a timer rather than by a sleeping thread, so thousands of devices can
+ * answer at once.
+ * </p>
+ */
+public class DeviceSimulator implements Closeable {
+
+	private final HttpServer server;
+	private final ExecutorService handlers;
+	private final ScheduledExecutorService responder;
+	private final ConcurrentHashMap<String, VirtualDevice> devices = new ConcurrentHashMap<String, VirtualDevice>();
+
+	private volatile int latency = 0;
+	private volatile int jitter = 0;
+	private volatile double errorRate = 0;
+	private volatile double dropRate = 0;
+
+	private final AtomicLong requests = new AtomicLong();
+
+	/**
+	 * Starts a simulator on a free local port.
+	 */
+	public DeviceSimulator() throws IOException {
+
+		this(0);
+
+	}
+
+	/**
+	 * Starts a simulator on the given local port, or a free one if it is 0.
+	 */
+	public DeviceSimulator(final int port) throws IOException {
+
+		handlers = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()),
+				RobotExecutors.daemonThreads("iRoomba-simulator"));
+		responder = Executors.newSingleThreadScheduledExecutor(RobotExecutors.daemonThreads("iRoomba-simulator-timer"));
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		server.createContext("/", new HttpHandler() {
+
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+
+				accept(exchange);
+
+			}
+
+		});
+		server.setExecutor(handlers);
+		server.start();
+
+	}
+
+	// Devices \\
+	/**
+	 * Adds a device with the given name, replacing any device of that name.
+	 */
+	public VirtualDevice add(final String name) {
+
+		return add(new VirtualDevice(name));
+
+	}
+
+	public VirtualDevice add(final VirtualDevice device) {
+
+		devices.put(device.name(), device);
+
+		return device;
+
+	}
+
+	/**
+	 * Adds a number of devices named with the prefix and a counter.
+	 *
+	 * @return The address of each new device.
+	 */
+	public List<String> addDevices(final String prefix, final int count) {
+
+		final List<String> addresses = new ArrayList<String>(count);
+
+		for (int i = 0; i < count; i++) {
+			addresses.add(address(add(prefix + i).name()));
+		}
+
+		return addresses;
+
+	}
+
+	public VirtualDevice device(final String name) {
+
+		return devices.get(name);
+
+	}
+
+	public void remove(final String name) {
+
+		devices.remove(name);
+
+	}
+
+	public int size() {
+
+		return devices.size();
+
+	}
+
+	/**
+	 * The address to hand to a Robot to reach a device.
+	 */
+	public String address(final String name) {
+
+		return "127.0.0.1:" + port() + '/' + name;
+
+	}
+
+	public int port() {
+
+		return server.getAddress().getPort();
+
+	}
+
+	/**
+	 * A Transport that reaches a device directly, without sockets, but with
+	 * the same latency and failures as over HTTP. Useful for running far more
+	 * Robots than the machine has ports or threads for sockets.
+	 */
+	public Transport transport(final String name) {
+
+		return new Transport() {
+
+			@Override
+			public byte[] get(final String path) throws IOException {
+
+				requests.incrementAndGet();
+
+				final VirtualDevice device = devices.get(name);
+				final long delay = delay();
+
+				if (delay > 0) {
+					try {
+						TimeUnit.MILLISECONDS.sleep(delay);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+				}
+
+				if (roll(dropRate)) {
+					throw new SocketTimeoutException("Simulated dropped response from " + name);
+				}
+				if (roll(errorRate)) {
+					throw new IOException("HTTP 500 from " + name);
+				}
+
+				final byte[] body = device == null ? null : device.handle(path);
+				if (body == null) {
+					throw new IOException("HTTP 404 from " + name);
+				}
+
+				return body;
+
+			}
+
+			@Override
+			public void close() {
+			}
+
+		};
+
+	}
+
+	// Fault Injection \\
+	/**
+	 * Delays every response.
+	 *
+	 * @param millis
+	 *            The least time a response takes.
+	 * @param jitterMillis
+	 *            The most extra time, chosen at random, that is added to it.
+	 */
+	public void setLatency(final int millis, final int jitterMillis) {
+
+		latency = millis;
+		jitter = jitterMillis;
+
+	}
+
+	/**
+	 * The share of requests, between 0 and 1, that are answered with an
+	 * HTTP 500.
+	 */
+	public void setErrorRate(final double rate) {
+
+		errorRate = rate;
+
+	}
+
+	/**
+	 * The share of requests, between 0 and 1, whose connection is closed
+	 * without any response.
+	 */
+	public void setDropRate(final double rate) {
+
+		dropRate = rate;
+
+	}
+
+	/** The number of requests received so far. */
+	public long requests() {
+
+		return requests.get();
+
+	}
+
+	@Override
+	public void close() {
+
+		server.stop(0);
+		responder.shutdownNow();
+		handlers.shutdownNow();
+
+	}
+
+	// Serving \\
+	private void accept(final HttpExchange exchange) {
+
+		requests.incrementAndGet();
+
+		final long delay = delay();
+
+		if (delay <= 0) {
+			respond(exchange);
+			return;
+		}
+
+		responder.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+
+				respond(exchange);
+
+			}
+
+		}, delay, TimeUnit.MILLISECONDS);
+
+	}
+
+	private void respond(final HttpExchange exchange) {
+
+		try {
+			if (roll(dropRate)) {
+				exchange.close();
+				return;
+			}
+
+			if (roll(errorRate)) {
+				send(exchange, 500, null);
+				return;
+			}
+
+			final String rawPath = exchange.getRequestURI().getRawPath();
+			final String query = exchange.getRequestURI().getRawQuery();
+
+			// The first part of the path names the device.
+			final int slash = rawPath.indexOf('/', 1);
+			final VirtualDevice device = slash > 0 ? devices.get(rawPath.substring(1, slash)) : null;
+			final byte[] body = device == null ? null
+					: device.handle(rawPath.substring(slash) + (query != null ? '?' + query : ""));
+
+			send(exchange, body == null ? 404 : 200, body);
+		} catch (final IOException | RuntimeException e) {
+			exchange.close();
+		}
+
+	}
+
+	private static void send(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+
+		if (body != null) {
+			final OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+
+		exchange.close();
+
+	}
+
+	private long delay() {
+
+		final int spread = jitter;
+
+		return latency + (spread > 0 ? ThreadLocalRandom.current().nextInt(spread + 1) : 0);
+
+	}
+
+	private static boolean roll(final double rate) {
+
+		return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+
+	}
+
+}
@@ -0,0 +1,269 @@
+package iRoomba;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Starts one asynchronous job per Robot of a batch, no more than a given
+ * number at once and no closer together than a given stagger, and gives up
+ * on whatever is left at a deadline.
+ * <p>
+ * No thread waits on the jobs: the next one is started as an earlier one
+ * completes, and staggered starts and the deadline are left to the timer.
+ * Every job is reported exactly once, either with how it completed or, if
+ * the deadline came first, with a {@link TimeoutException}.
+ * </p>
+ */
+final class FanOut {
+
+	/** Starts the job for one position of the batch. */
+	interface Job {
+
+		CompletableFuture<?> start(int index);
+
+	}
+
+	/** Told how each job went. */
+	interface Outcome {
+
+		/**
+		 * @param failure
+		 *            Null if the job succeeded.
+		 * @param elapsed
+		 *            Nanoseconds from the start of the job, or 0 if it never
+		 *            started.
+		 */
+		void done(int index, Throwable failure, long elapsed);
+
+	}
+
+	private final int count;
+	private final int concurrency;
+	private final long stagger;
+	private final Job job;
+	private final Outcome outcome;
+	private final ScheduledExecutorService scheduler;
+	private final CompletableFuture<Void> finished = new CompletableFuture<Void>();
+
+	// The state of each job \\
+	private static final int WAITING = 0;
+	private static final int STARTED = 1;
+	private static final int REPORTED = 2;
+
+	private final AtomicIntegerArray states;
+	private final AtomicLongArray started;
+	private final AtomicReferenceArray<CompletableFuture<?>> running;
+
+	/** Guarded by this. */
+	private int next = 0;
+	private int inFlight = 0;
+	private int remaining;
+	private long nextStart = 0;
+	private boolean launchScheduled = false;
+	private boolean expired = false;
+	private ScheduledFuture<?> deadline = null;
+
+	private FanOut(final int count, final int concurrency, final long stagger, final Job job, final Outcome outcome,
+			final ScheduledExecutorService scheduler) {
+
+		this.count = count;
+		this.concurrency = concurrency;
+		this.stagger = stagger;
+		this.job = job;
+		this.outcome = outcome;
+		this.scheduler = scheduler;
+		this.remaining = count;
+		this.states = new AtomicIntegerArray(count);
+		this.started = new AtomicLongArray(count);
+		this.running = new AtomicReferenceArray<CompletableFuture<?>>(count);
+
+	}
+
+	/**
+	 * Runs the jobs of a batch.
+	 *
+	 * @param concurrency
+	 *            The most jobs running at once.
+	 * @param stagger
+	 *            Nanoseconds at least between the starts of two jobs.
+	 * @param timeout
+	 *            Nanoseconds after which jobs still running or not yet started
+	 *            are reported as timed out.
+	 * @return Completes once every job has been reported.
+	 */
+	static CompletableFuture<Void> run(final int count, final int concurrency, final long stagger,
+			final long timeout, final Job job, final Outcome outcome) {
+
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("Concurrency must be positive");
+		}
+
+		final FanOut fanOut = new FanOut(count, concurrency, Math.max(0, stagger), job, outcome,
+				RobotExecutors.scheduler());
+
+		if (count == 0) {
+			fanOut.finished.complete(null);
+			return fanOut.finished;
+		}
+
+		synchronized (fanOut) {
+			fanOut.deadline = fanOut.scheduler.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+
+					fanOut.expire();
+
+				}
+
+			}, timeout, TimeUnit.NANOSECONDS);
+		}
+
+		fanOut.launch();
+
+		return fanOut.finished;
+
+	}
+
+	/**
+	 * Starts as many jobs as the limits allow now, and has the timer come back
+	 * if the stagger holds the next one back.
+	 */
+	private void launch() {
+
+		while (true) {
+			final int index;
+
+			synchronized (this) {
+				if (expired || next >= count || inFlight >= concurrency || launchScheduled) {
+					return;
+				}
+				final long now = System.nanoTime();
+				if (stagger > 0 && next > 0 && now - nextStart < 0) {
+					launchScheduled = true;
+					scheduler.schedule(new Runnable() {
+
+						@Override
+						public void run() {
+
+							synchronized (FanOut.this) {
+								launchScheduled = false;
+							}
+							launch();
+
+						}
+
+					}, nextStart - now, TimeUnit.NANOSECONDS);
+					return;
+				}
+				index = next++;
+				inFlight++;
+				nextStart = now + stagger;
+				started.set(index, now);
+				states.set(index, STARTED);
+			}
+
+			start(index);
+		}
+
+	}
+
+	private void start(final int index) {
+
+		final CompletableFuture<?> future;
+
+		if (states.get(index) == REPORTED) {
+			// The deadline passed while it was being started.
+			return;
+		}
+
+		try {
+			future = job.start(index);
+		} catch (final RuntimeException e) {
+			report(index, e);
+			return;
+		}
+
+		running.set(index, future);
+		future.whenComplete(new BiConsumer<Object, Throwable>() {
+
+			@Override
+			public void accept(final Object result, final Throwable failure) {
+
+				report(index, unwrap(failure));
+
+			}
+
+		});
+
+	}
+
+	private void report(final int index, final Throwable failure) {
+
+		final int state = states.getAndSet(index, REPORTED);
+
+		if (state == REPORTED) {
+			return;
+		}
+
+		outcome.done(index, failure, state == STARTED ? System.nanoTime() - started.get(index) : 0);
+
+		final boolean last;
+		synchronized (this) {
+			if (state == STARTED) {
+				inFlight--;
+			}
+			last = --remaining == 0;
+			if (last && deadline != null) {
+				deadline.cancel(false);
+			}
+		}
+
+		if (last) {
+			finished.complete(null);
+		} else {
+			launch();
+		}
+
+	}
+
+	private void expire() {
+
+		synchronized (this) {
+			expired = true;
+		}
+
+		for (int i = 0; i < count; i++) {
+			final Future<?> future = running.get(i);
+			if (states.get(i) != REPORTED) {
+				report(i, new TimeoutException("No answer before the deadline"));
+				if (future != null) {
+					future.cancel(false);
+				}
+			}
+		}
+
+	}
+
+	private static Throwable unwrap(final Throwable failure) {
+
+		if ((failure instanceof CompletionException || failure instanceof ExecutionException)
+				&& failure.getCause() != null) {
+			return failure.getCause();
+		}
+
+		return failure;
+
+	}
+
+}
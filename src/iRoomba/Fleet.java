@@ -0,0 +1,425 @@
+package iRoomba;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A registry of Robots, looked up by address or by device UUID.
+ * <p>
+ * Every operation may be called from any thread. A Robot is kept under its
+ * address, so adding a Robot again for the same device replaces the old one
+ * instead of adding another. A Robot only joins a fleet when it is added,
+ * or created with {@link #connect(String)}. Besides the {@link #shared()
+ * shared} fleet, further fleets can be made to group Robots, such as the
+ * ones on one floor.
+ * </p>
+ * <p>
+ * The bulk operations take a parallelism threshold as
+ * {@link ConcurrentHashMap} does: the number of Robots at which the work is
+ * split across the common pool. Pass {@link Long#MAX_VALUE} to stay on the
+ * calling thread.
+ * </p>
+ */
+public final class Fleet implements Iterable<Robot> {
+
+	private static final Fleet SHARED = new Fleet();
+
+	private final ConcurrentHashMap<String, Robot> byIp = new ConcurrentHashMap<String, Robot>();
+	/** Filled in as UUIDs are looked up; checked against the Robot on use. */
+	private final ConcurrentHashMap<String, Robot> byUuid = new ConcurrentHashMap<String, Robot>();
+
+	/** A fleet for the whole program, empty until Robots are added. */
+	public static Fleet shared() {
+
+		return SHARED;
+
+	}
+
+	/**
+	 * Adds a Robot, replacing any other Robot with the same address.
+	 *
+	 * @return The Robot replaced, or null.
+	 */
+	public Robot add(final Robot robot) {
+
+		final Robot previous = byIp.put(robot.ip, robot);
+
+		if (previous != null && previous != robot) {
+			forget(previous);
+		}
+
+		return previous;
+
+	}
+
+	/**
+	 * Creates a Robot for an address, talking over the shared keep-alive
+	 * connections, and adds it.
+	 *
+	 * @see Robot#Robot(String)
+	 */
+	public Robot connect(final String ipAddress) {
+
+		final Robot robot = new Robot(ipAddress);
+		add(robot);
+
+		return robot;
+
+	}
+
+	/**
+	 * Removes a Robot, if it is still the one kept for its address.
+	 */
+	public boolean remove(final Robot robot) {
+
+		if (byIp.remove(robot.ip, robot)) {
+			forget(robot);
+			return true;
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * Removes the Robot at an address.
+	 *
+	 * @return The Robot removed, or null.
+	 */
+	public Robot remove(final String ip) {
+
+		final Robot removed = byIp.remove(ip);
+
+		if (removed != null) {
+			forget(removed);
+		}
+
+		return removed;
+
+	}
+
+	/** The Robot at an address, or null. */
+	public Robot get(final String ip) {
+
+		return byIp.get(ip);
+
+	}
+
+	/**
+	 * The Robot whose device has a UUID, or null. <br>
+	 * Only Robots that have fetched their full status can be found this way;
+	 * nothing is fetched.
+	 */
+	public Robot byUuid(final String uuid) {
+
+		final Robot known = byUuid.get(uuid);
+
+		if (known != null && uuid.equals(uuidOf(known)) && byIp.get(known.ip) == known) {
+			return known;
+		}
+
+		if (known != null) {
+			byUuid.remove(uuid, known);
+		}
+
+		final Robot found = byIp.search(1024, new BiFunction<String, Robot, Robot>() {
+
+			@Override
+			public Robot apply(final String ip, final Robot robot) {
+
+				return uuid.equals(uuidOf(robot)) ? robot : null;
+
+			}
+
+		});
+
+		if (found != null) {
+			byUuid.put(uuid, found);
+		}
+
+		return found;
+
+	}
+
+	public boolean contains(final String ip) {
+
+		return byIp.containsKey(ip);
+
+	}
+
+	public int size() {
+
+		return byIp.size();
+
+	}
+
+	public boolean isEmpty() {
+
+		return byIp.isEmpty();
+
+	}
+
+	/** A copy of the Robots in the fleet now. */
+	public List<Robot> robots() {
+
+		return new ArrayList<Robot>(byIp.values());
+
+	}
+
+	/** A copy of the addresses in the fleet now. */
+	public List<String> ips() {
+
+		return new ArrayList<String>(byIp.keySet());
+
+	}
+
+	/**
+	 * Iterates over the Robots without copying them. Robots added or removed
+	 * meanwhile may or may not be seen.
+	 */
+	@Override
+	public Iterator<Robot> iterator() {
+
+		return byIp.values().iterator();
+
+	}
+
+	// Bulk operations \\
+	/** Runs an action on every Robot. */
+	public void forEach(final long parallelismThreshold, final Consumer<? super Robot> action) {
+
+		byIp.forEachValue(parallelismThreshold, action);
+
+	}
+
+	/** The Robots that match. */
+	public List<Robot> filter(final long parallelismThreshold, final Predicate<? super Robot> test) {
+
+		final List<Robot> matches = new ArrayList<Robot>();
+
+		byIp.forEachValue(parallelismThreshold, new Consumer<Robot>() {
+
+			@Override
+			public void accept(final Robot robot) {
+
+				if (test.test(robot)) {
+					synchronized (matches) {
+						matches.add(robot);
+					}
+				}
+
+			}
+
+		});
+
+		return matches;
+
+	}
+
+	/** The number of Robots that match. */
+	public long count(final long parallelismThreshold, final Predicate<? super Robot> test) {
+
+		final AtomicLong count = new AtomicLong();
+
+		byIp.forEachValue(parallelismThreshold, new Consumer<Robot>() {
+
+			@Override
+			public void accept(final Robot robot) {
+
+				if (test.test(robot)) {
+					count.incrementAndGet();
+				}
+
+			}
+
+		});
+
+		return count.get();
+
+	}
+
+	/**
+	 * Fetches the status of every Robot in the fleet at once and waits for
+	 * the batch.
+	 *
+	 * @see #refreshAsync(boolean, int, long)
+	 */
+	public FleetStatus refresh(final boolean wantFullStatus, final int concurrency, final long timeout) {
+
+		return refreshAsync(wantFullStatus, concurrency, timeout).join();
+
+	}
+
+	/**
+	 * Fetches the status of every Robot in the fleet, up to {@code
+	 * concurrency} at a time, through their {@link AsyncRobot}s. The batch
+	 * therefore takes about as long as its slowest Robot rather than the sum
+	 * of them, and no thread waits for a Robot that does not answer.
+	 *
+	 * @param timeout
+	 *            Milliseconds after which the Robots that have not answered
+	 *            are given up on and reported with a timeout.
+	 * @return Completes with the batch by the deadline at the latest.
+	 */
+	public CompletableFuture<FleetStatus> refreshAsync(final boolean wantFullStatus, final int concurrency,
+			final long timeout) {
+
+		final Robot[] robots = byIp.values().toArray(new Robot[0]);
+		final FleetStatus status = new FleetStatus(robots);
+
+		return run(status, concurrency, 0, timeout, new FanOut.Job() {
+
+			@Override
+			public CompletableFuture<?> start(final int index) {
+
+				return robots[index].async().statusUpdate(wantFullStatus);
+
+			}
+
+		}, new FanOut.Outcome() {
+
+			@Override
+			public void done(final int index, final Throwable failure, final long elapsed) {
+
+				status.set(index, failure == null ? robots[index].currentSnapshot() : null, failure, elapsed);
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * Sends a command to every Robot in the fleet and waits for the batch.
+	 *
+	 * @see #broadcastAsync(String, int, long, long)
+	 */
+	public BroadcastResult broadcast(final String genericCommand, final int concurrency, final long stagger,
+			final long timeout) {
+
+		return broadcastAsync(genericCommand, concurrency, stagger, timeout).join();
+
+	}
+
+	/**
+	 * Sends a command, such as "dock" or "clean", to every Robot in the fleet
+	 * through their {@link AsyncRobot}s, up to {@code concurrency} at a time.
+	 * Each Robot still keeps to its own pacing, but no Robot waits for
+	 * another.
+	 *
+	 * @param stagger
+	 *            Milliseconds at least between sending to one Robot and the
+	 *            next, to spread out the load on a shared network or power
+	 *            circuit, or 0.
+	 * @param timeout
+	 *            Milliseconds after which the Robots that have not answered
+	 *            are given up on and reported with a timeout.
+	 * @return Completes with every Robot's outcome by the deadline at the
+	 *         latest.
+	 */
+	public CompletableFuture<BroadcastResult> broadcastAsync(final String genericCommand, final int concurrency,
+			final long stagger, final long timeout) {
+
+		final Robot[] robots = byIp.values().toArray(new Robot[0]);
+		final BroadcastResult result = new BroadcastResult(genericCommand, robots);
+
+		return run(result, concurrency, stagger, timeout, new FanOut.Job() {
+
+			@Override
+			public CompletableFuture<?> start(final int index) {
+
+				return robots[index].async().generalSend(genericCommand);
+
+			}
+
+		}, new FanOut.Outcome() {
+
+			@Override
+			public void done(final int index, final Throwable failure, final long elapsed) {
+
+				result.set(index, failure, elapsed);
+
+			}
+
+		});
+
+	}
+
+	private static <B extends FleetBatch> CompletableFuture<B> run(final B batch, final int concurrency,
+			final long stagger, final long timeout, final FanOut.Job job, final FanOut.Outcome outcome) {
+
+		final long start = System.nanoTime();
+
+		return FanOut.run(batch.size(), concurrency, TimeUnit.MILLISECONDS.toNanos(stagger),
+				TimeUnit.MILLISECONDS.toNanos(timeout), job, outcome).thenApply(new Function<Void, B>() {
+
+					@Override
+					public B apply(final Void done) {
+
+						batch.finish(System.nanoTime() - start);
+
+						return batch;
+
+					}
+
+				});
+
+	}
+
+	/** The Robots whose latest status had a state. Nothing is fetched. */
+	public List<Robot> inState(final CleanerState state) {
+
+		return filter(Long.MAX_VALUE, new Predicate<Robot>() {
+
+			@Override
+			public boolean test(final Robot robot) {
+
+				final StatusSnapshot snapshot = robot.currentSnapshot();
+
+				return snapshot != null && snapshot.cleanerState() == state;
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * A publisher of the statuses of the Robots in the fleet now.
+	 *
+	 * @see SnapshotPublisher
+	 */
+	public SnapshotPublisher publisher(final OverflowPolicy policy, final int capacity) {
+
+		return new SnapshotPublisher(robots(), policy, capacity);
+
+	}
+
+	private void forget(final Robot robot) {
+
+		final String uuid = uuidOf(robot);
+
+		if (uuid != null) {
+			byUuid.remove(uuid, robot);
+		}
+
+	}
+
+	private static String uuidOf(final Robot robot) {
+
+		final StatusSnapshot snapshot = robot.currentSnapshot();
+
+		return snapshot == null || !snapshot.hasFullStatus() ? null : snapshot.uuid();
+
+	}
+
+}
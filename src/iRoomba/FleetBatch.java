@@ -0,0 +1,186 @@
+package iRoomba;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The outcome of doing one thing to many Robots at once.
+ * <p>
+ * Position {@code i} holds one Robot with the reason it failed, if it did,
+ * and how long it took. The positions are kept in parallel arrays, so a
+ * batch of hundreds of Robots is a handful of objects.
+ * </p>
+ */
+public abstract class FleetBatch {
+
+	private final Robot[] robots;
+	private final Throwable[] errors;
+	private final long[] elapsed;
+	private long total;
+
+	FleetBatch(final Robot[] robots) {
+
+		this.robots = robots;
+		this.errors = new Throwable[robots.length];
+		this.elapsed = new long[robots.length];
+
+	}
+
+	/** Written once per position, before the batch is handed out. */
+	void set(final int index, final Throwable error, final long nanos) {
+
+		errors[index] = error;
+		elapsed[index] = nanos;
+
+	}
+
+	void finish(final long nanos) {
+
+		total = nanos;
+
+	}
+
+	/** The number of Robots in the batch. */
+	public int size() {
+
+		return robots.length;
+
+	}
+
+	public Robot robot(final int index) {
+
+		return robots[index];
+
+	}
+
+	/**
+	 * Why a Robot failed, or null if it succeeded. A Robot that had not
+	 * answered by the deadline has a {@link TimeoutException}.
+	 */
+	public Throwable error(final int index) {
+
+		return errors[index];
+
+	}
+
+	public boolean isOk(final int index) {
+
+		return errors[index] == null;
+
+	}
+
+	/** Milliseconds the request took, or ran for before it was given up on. */
+	public long elapsedMillis(final int index) {
+
+		return TimeUnit.NANOSECONDS.toMillis(elapsed[index]);
+
+	}
+
+	/**
+	 * The position of the Robot at an address, or -1. Looks through the batch
+	 * from the start.
+	 */
+	public int indexOf(final String ip) {
+
+		for (int i = 0; i < robots.length; i++) {
+			if (robots[i].ip.equals(ip)) {
+				return i;
+			}
+		}
+
+		return -1;
+
+	}
+
+	public int succeeded() {
+
+		int count = 0;
+		for (final Throwable error : errors) {
+			if (error == null) {
+				count++;
+			}
+		}
+
+		return count;
+
+	}
+
+	public int failed() {
+
+		return robots.length - succeeded();
+
+	}
+
+	/** The number of Robots that had not answered by the deadline. */
+	public int timedOut() {
+
+		int count = 0;
+		for (final Throwable error : errors) {
+			if (error instanceof TimeoutException) {
+				count++;
+			}
+		}
+
+		return count;
+
+	}
+
+	/** The Robots that succeeded. */
+	public List<Robot> successes() {
+
+		return select(true);
+
+	}
+
+	/** The Robots that failed or timed out. */
+	public List<Robot> failures() {
+
+		return select(false);
+
+	}
+
+	/** Milliseconds the slowest Robot that answered took, or 0. */
+	public long slowestMillis() {
+
+		long slowest = 0;
+		for (int i = 0; i < robots.length; i++) {
+			if (errors[i] == null) {
+				slowest = Math.max(slowest, elapsed[i]);
+			}
+		}
+
+		return TimeUnit.NANOSECONDS.toMillis(slowest);
+
+	}
+
+	/** Milliseconds the whole batch took. */
+	public long elapsedMillis() {
+
+		return TimeUnit.NANOSECONDS.toMillis(total);
+
+	}
+
+	private List<Robot> select(final boolean ok) {
+
+		final List<Robot> selected = new ArrayList<Robot>();
+		for (int i = 0; i < robots.length; i++) {
+			if ((errors[i] == null) == ok) {
+				selected.add(robots[i]);
+			}
+		}
+
+		return selected;
+
+	}
+
+	@Override
+	public String toString() {
+
+		return getClass().getSimpleName() + '[' + succeeded() + " of " + robots.length + " ok, " + timedOut()
+				+ " timed out, " + elapsedMillis() + " ms]";
+
+	}
+
+}
@@ -0,0 +1,33 @@
+package iRoomba;
+
+/**
+ * The outcome of refreshing many Robots at once, as returned by
+ * {@link Fleet#refresh(boolean, int, long)}: each Robot's snapshot, or the
+ * reason it has none.
+ */
+public final class FleetStatus extends FleetBatch {
+
+	private final StatusSnapshot[] snapshots;
+
+	FleetStatus(final Robot[] robots) {
+
+		super(robots);
+		this.snapshots = new StatusSnapshot[robots.length];
+
+	}
+
+	void set(final int index, final StatusSnapshot snapshot, final Throwable error, final long nanos) {
+
+		snapshots[index] = snapshot;
+		set(index, error, nanos);
+
+	}
+
+	/** The snapshot fetched for a Robot, or null if it failed. */
+	public StatusSnapshot snapshot(final int index) {
+
+		return snapshots[index];
+
+	}
+
+}
@@ -0,0 +1,284 @@
+package iRoomba;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Incrementally decodes one HTTP/1.x response at a time.
+ * <p>
+ * Bytes can be fed in pieces of any size as they arrive from the network.
+ * Bodies delimited by Content-Length, chunked encoding or the end of the
+ * connection are supported. The body buffer is kept between responses so a
+ * long lived connection does not reallocate it on every request.
+ * </p>
+ */
+final class HttpResponseDecoder {
+
+	private static final int STATUS_LINE = 0;
+	private static final int HEADERS = 1;
+	private static final int BODY = 2;
+	private static final int CHUNK_SIZE = 3;
+	private static final int CHUNK_DATA = 4;
+	private static final int CHUNK_END = 5;
+	private static final int TRAILERS = 6;
+	private static final int UNTIL_CLOSE = 7;
+	private static final int DONE = 8;
+
+	private int state = STATUS_LINE;
+
+	private final StringBuilder line = new StringBuilder(64);
+	private byte[] body = new byte[1024];
+	private int bodyLength;
+	private long remaining;
+
+	private int status;
+	private boolean keepAlive;
+	private long contentLength;
+	private boolean chunked;
+
+	HttpResponseDecoder() {
+
+		reset();
+
+	}
+
+	/**
+	 * Prepares the decoder for the next response on the same connection.
+	 */
+	void reset() {
+
+		state = STATUS_LINE;
+		line.setLength(0);
+		bodyLength = 0;
+		remaining = 0;
+		status = 0;
+		keepAlive = true;
+		contentLength = -1;
+		chunked = false;
+
+	}
+
+	/**
+	 * Consumes as many bytes from the buffer as belong to the current response.
+	 *
+	 * @return Whether the response is now complete.
+	 */
+	boolean feed(final ByteBuffer in) throws IOException {
+
+		while (state != DONE && in.hasRemaining()) {
+
+			switch (state) {
+			case STATUS_LINE:
+			case HEADERS:
+			case CHUNK_SIZE:
+			case CHUNK_END:
+			case TRAILERS:
+				if (readLine(in)) {
+					onLine(line.toString());
+					line.setLength(0);
+				}
+				break;
+
+			case BODY:
+			case CHUNK_DATA:
+				final int n = (int) Math.min(remaining, in.remaining());
+				append(in, n);
+				remaining -= n;
+				if (remaining == 0) {
+					state = state == BODY ? DONE : CHUNK_END;
+				}
+				break;
+
+			case UNTIL_CLOSE:
+				append(in, in.remaining());
+				break;
+			}
+
+		}
+
+		return state == DONE;
+
+	}
+
+	/**
+	 * Tells the decoder that the peer closed the connection.
+	 *
+	 * @return Whether the response was complete.
+	 */
+	boolean endOfStream() {
+
+		if (state == UNTIL_CLOSE) {
+			state = DONE;
+			keepAlive = false;
+		}
+
+		return state == DONE;
+
+	}
+
+	boolean isDone() {
+
+		return state == DONE;
+
+	}
+
+	/** Whether any bytes of the current response have been seen. */
+	boolean isStarted() {
+
+		return state != STATUS_LINE || line.length() > 0;
+
+	}
+
+	int status() {
+
+		return status;
+
+	}
+
+	/** Whether the connection may carry another request after this one. */
+	boolean keepAlive() {
+
+		return keepAlive;
+
+	}
+
+	/** A copy of the decoded body. */
+	byte[] body() {
+
+		return Arrays.copyOf(body, bodyLength);
+
+	}
+
+	private boolean readLine(final ByteBuffer in) throws IOException {
+
+		while (in.hasRemaining()) {
+			final char c = (char) (in.get() & 0xFF);
+			if (c == '\n') {
+				final int end = line.length() - 1;
+				if (end >= 0 && line.charAt(end) == '\r') {
+					line.setLength(end);
+				}
+				return true;
+			}
+			if (line.length() > 8192) {
+				throw new IOException("HTTP header line too long");
+			}
+			line.append(c);
+		}
+
+		return false;
+
+	}
+
+	private void onLine(final String text) throws IOException {
+
+		switch (state) {
+		case STATUS_LINE:
+			if (text.isEmpty()) {
+				// Tolerate a stray CRLF left over from a previous response.
+				return;
+			}
+			if (!text.startsWith("HTTP/") || text.length() < 12) {
+				throw new IOException("Malformed HTTP status line: " + text);
+			}
+			// HTTP/1.0 connections close unless the server says otherwise.
+			keepAlive = !text.startsWith("HTTP/1.0");
+			try {
+				status = Integer.parseInt(text.substring(9, 12));
+			} catch (final NumberFormatException e) {
+				throw new IOException("Malformed HTTP status line: " + text);
+			}
+			state = HEADERS;
+			break;
+
+		case HEADERS:
+			if (text.isEmpty()) {
+				startBody();
+			} else {
+				onHeader(text);
+			}
+			break;
+
+		case CHUNK_SIZE:
+			final int extension = text.indexOf(';');
+			final String size = (extension >= 0 ? text.substring(0, extension) : text).trim();
+			try {
+				remaining = Long.parseLong(size, 16);
+			} catch (final NumberFormatException e) {
+				throw new IOException("Malformed chunk size: " + text);
+			}
+			state = remaining == 0 ? TRAILERS : CHUNK_DATA;
+			break;
+
+		case CHUNK_END:
+			state = CHUNK_SIZE;
+			break;
+
+		case TRAILERS:
+			if (text.isEmpty()) {
+				state = DONE;
+			}
+			break;
+		}
+
+	}
+
+	private void onHeader(final String header) throws IOException {
+
+		final int colon = header.indexOf(':');
+		if (colon <= 0) {
+			return;
+		}
+
+		final String name = header.substring(0, colon).trim();
+		final String value = header.substring(colon + 1).trim();
+
+		if (name.equalsIgnoreCase("Content-Length")) {
+			try {
+				contentLength = Long.parseLong(value);
+			} catch (final NumberFormatException e) {
+				throw new IOException("Malformed Content-Length: " + value);
+			}
+		} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+			chunked = value.toLowerCase().contains("chunked");
+		} else if (name.equalsIgnoreCase("Connection")) {
+			if (value.equalsIgnoreCase("close")) {
+				keepAlive = false;
+			} else if (value.equalsIgnoreCase("keep-alive")) {
+				keepAlive = true;
+			}
+		}
+
+	}
+
+	private void startBody() {
+
+		if (status / 100 == 1) {
+			// Informational responses are followed by the real one.
+			state = STATUS_LINE;
+		} else if (status == 204 || status == 304) {
+			state = DONE;
+		} else if (chunked) {
+			state = CHUNK_SIZE;
+		} else if (contentLength >= 0) {
+			remaining = contentLength;
+			state = remaining == 0 ? DONE : BODY;
+		} else {
+			keepAlive = false;
+			state = UNTIL_CLOSE;
+		}
+
+	}
+
+	private void append(final ByteBuffer in, final int n) {
+
+		if (bodyLength + n > body.length) {
+			body = Arrays.copyOf(body, Math.max(body.length * 2, bodyLength + n));
+		}
+		in.get(body, bodyLength, n);
+		bodyLength += n;
+
+	}
+
+}
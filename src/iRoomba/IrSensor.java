@@ -0,0 +1,48 @@
+package iRoomba;
+
+/**
+ * The infrared receivers that pick up the homebase and virtual walls.
+ */
+public enum IrSensor {
+
+	OMNI(StatusSnapshot.IR_OMNI),
+	LEFT(StatusSnapshot.IR_LEFT),
+	RIGHT(StatusSnapshot.IR_RIGHT);
+
+	/** Where the reading is kept in a snapshot. */
+	final int field;
+
+	private IrSensor(final int field) {
+
+		this.field = field;
+
+	}
+
+	/**
+	 * Reads the names accepted by {@link Robot#getIRReadings(String)}, such as
+	 * "omni", "l" or "right".
+	 *
+	 * @return The sensor, or null if the name is not known.
+	 */
+	public static IrSensor of(final String name) {
+
+		switch (name.toLowerCase()) {
+		case "omni":
+		case "o":
+			return OMNI;
+
+		case "left":
+		case "l":
+			return LEFT;
+
+		case "right":
+		case "r":
+			return RIGHT;
+
+		default:
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,193 @@
+package iRoomba;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps a movement going for a set time by repeating it, then stops the
+ * Robot.
+ * <p>
+ * Movement commands such as forward only last about a second, so they have
+ * to be repeated to keep driving. The repeats are timed against the start of
+ * the hold rather than against the previous repeat, so slow responses do not
+ * make the hold drift or overshoot. A drivestop is always sent when the hold
+ * ends, whether it ran its course or was cancelled, and no later movement
+ * can take its place in the queue.
+ * </p>
+ * <p>
+ * The timing is done on the timer shared by every Robot; no thread is tied
+ * up for the length of the hold. Obtain one through
+ * {@link AsyncRobot#hold(String, long)}.
+ * </p>
+ */
+public final class MotionHold {
+
+	/** How often a movement is repeated unless told otherwise. */
+	public static final long DEFAULT_INTERVAL = 500;
+
+	private final AsyncRobot robot;
+	private final String path;
+	private final long deadline;
+
+	private final CompletableFuture<Void> completion = new CompletableFuture<Void>();
+	/** Set under the hold's lock, so no repeat is sent once it is. */
+	private volatile boolean finished = false;
+	/** The repeat that was sent last, so a slow device is not sent more. */
+	private volatile CompletableFuture<Void> lastRepeat = null;
+
+	private volatile ScheduledFuture<?> repeater = null;
+	private volatile ScheduledFuture<?> stopper = null;
+
+	private MotionHold(final AsyncRobot robot, final String path, final long duration) {
+
+		this.robot = robot;
+		this.path = path;
+		this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+
+	}
+
+	static MotionHold start(final AsyncRobot robot, final String path, final long duration, final long interval) {
+
+		if (duration < 0 || interval <= 0) {
+			throw new IllegalArgumentException("duration must not be negative and interval must be positive");
+		}
+
+		final MotionHold hold = new MotionHold(robot, path, duration);
+
+		hold.repeater = RobotExecutors.scheduler().scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+
+				hold.repeat();
+
+			}
+
+		}, 0, interval, TimeUnit.MILLISECONDS);
+
+		hold.stopper = RobotExecutors.scheduler().schedule(new Runnable() {
+
+			@Override
+			public void run() {
+
+				hold.finish();
+
+			}
+
+		}, duration, TimeUnit.MILLISECONDS);
+
+		// A hold that ended before the tasks were stored could not cancel
+		// them, so do it now.
+		if (hold.finished) {
+			hold.cancelTimers();
+		}
+
+		return hold;
+
+	}
+
+	/**
+	 * Ends the hold early. The Robot is still sent a drivestop.
+	 *
+	 * @return False if the hold had already ended.
+	 */
+	public boolean cancel() {
+
+		return finish();
+
+	}
+
+	/**
+	 * Completes once the drivestop that ends the hold has been answered.
+	 */
+	public CompletableFuture<Void> completion() {
+
+		return completion;
+
+	}
+
+	public boolean isActive() {
+
+		return !finished;
+
+	}
+
+	/** Milliseconds left until the hold ends by itself. */
+	public long remaining() {
+
+		if (finished) {
+			return 0;
+		}
+
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+
+	}
+
+	private void repeat() {
+
+		synchronized (this) {
+			// Checked and sent under the lock finish() takes, so a repeat can
+			// never be queued behind the final drivestop.
+			if (finished || System.nanoTime() >= deadline) {
+				return;
+			}
+
+			final CompletableFuture<Void> previous = lastRepeat;
+			if (previous != null && !previous.isDone()) {
+				// The device has not taken the last one yet; another would only
+				// queue up behind it.
+				return;
+			}
+
+			lastRepeat = robot.sendPath(path);
+		}
+
+	}
+
+	private boolean finish() {
+
+		synchronized (this) {
+			if (finished) {
+				return false;
+			}
+			finished = true;
+		}
+
+		cancelTimers();
+
+		robot.finalStop().whenComplete(new BiConsumer<Void, Throwable>() {
+
+			@Override
+			public void accept(final Void result, final Throwable failure) {
+
+				if (failure != null) {
+					completion.completeExceptionally(failure);
+				} else {
+					completion.complete(null);
+				}
+
+			}
+
+		});
+
+		return true;
+
+	}
+
+	private void cancelTimers() {
+
+		final ScheduledFuture<?> repeating = repeater;
+		final ScheduledFuture<?> stopping = stopper;
+
+		if (repeating != null) {
+			repeating.cancel(false);
+		}
+		if (stopping != null) {
+			stopping.cancel(false);
+		}
+
+	}
+
+}
@@ -0,0 +1,26 @@
+package iRoomba;
+
+/**
+ * What a {@link SnapshotPublisher} does with snapshots a subscriber has not
+ * asked for yet.
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Keeps only the newest snapshot. A subscriber that falls behind skips
+	 * straight to the current status, which suits displays.
+	 */
+	LATEST,
+	/**
+	 * Keeps every snapshot up to the capacity. A subscriber that falls further
+	 * behind than that is failed with a {@link StatusOverflowException}
+	 * rather than silently missing one.
+	 */
+	BUFFER,
+	/**
+	 * Keeps the newest snapshots up to the capacity, throwing away the oldest
+	 * to make room.
+	 */
+	DROP_OLDEST
+
+}
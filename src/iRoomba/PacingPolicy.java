@@ -0,0 +1,134 @@
+package iRoomba;
+
+/**
+ * The limits within which an {@link AdaptivePacer} may move the gap between
+ * requests and the number of requests in flight for one class of command.
+ * <p>
+ * While the device answers promptly, the gap shrinks by {@code step} after
+ * every response and the in-flight limit grows by about one per round trip.
+ * A failed request, or one that takes more than {@code slowFactor} times the
+ * quickest round trip seen plus 20 ms of allowed jitter, multiplies the gap
+ * by {@code backoff} and halves the in-flight limit.
+ * </p>
+ * <p>
+ * Only status fetches have an in-flight limit to adapt. Commands are sent
+ * one at a time whatever their class, so a policy for any other class must
+ * allow exactly one in flight.
+ * </p>
+ */
+public final class PacingPolicy {
+
+	private final int initialGap;
+	private final int minGap;
+	private final int maxGap;
+	private final int step;
+	private final double backoff;
+	private final int maxInFlight;
+	private final double slowFactor;
+
+	/**
+	 * @param initialGap
+	 *            Milliseconds between requests before anything is measured.
+	 * @param minGap
+	 *            The shortest gap the pacer may settle on.
+	 * @param maxGap
+	 *            The longest gap the pacer may back off to.
+	 * @param step
+	 *            Milliseconds taken off the gap after each prompt response.
+	 * @param backoff
+	 *            What the gap is multiplied by when the device struggles.
+	 * @param maxInFlight
+	 *            The most requests of this class that may be outstanding.
+	 *            Must be 1 unless the policy is for status fetches.
+	 * @param slowFactor
+	 *            How many times the quickest round trip a response may take
+	 *            before it counts as a sign of overload.
+	 */
+	public PacingPolicy(final int initialGap, final int minGap, final int maxGap, final int step, final double backoff,
+			final int maxInFlight, final double slowFactor) {
+
+		if (minGap < 0 || maxGap < minGap || initialGap < minGap || initialGap > maxGap) {
+			throw new IllegalArgumentException("Gaps must satisfy 0 <= minGap <= initialGap <= maxGap");
+		}
+		if (backoff <= 1 || maxInFlight < 1 || slowFactor <= 1) {
+			throw new IllegalArgumentException("backoff and slowFactor must exceed 1 and maxInFlight must be positive");
+		}
+
+		this.initialGap = initialGap;
+		this.minGap = minGap;
+		this.maxGap = maxGap;
+		this.step = step;
+		this.backoff = backoff;
+		this.maxInFlight = maxInFlight;
+		this.slowFactor = slowFactor;
+
+	}
+
+	/**
+	 * The policy used for a class of command unless it has been overridden.
+	 * Commands start at {@link Robot#DELAY}, cycle commands are given more
+	 * room and status fetches start without any gap.
+	 */
+	public static PacingPolicy defaults(final CommandClass commandClass) {
+
+		final int delay = Math.max(Robot.DELAY, 50);
+
+		switch (commandClass) {
+		case DRIVE:
+			return new PacingPolicy(delay, 50, Math.max(delay, 3000), 10, 2.0, 1, 3.0);
+
+		case CLEAN:
+			return new PacingPolicy(Math.max(delay, 500), 250, Math.max(delay, 5000), 25, 2.0, 1, 3.0);
+
+		case STATUS:
+			return new PacingPolicy(0, 0, 2000, 10, 2.0, 2, 3.0);
+
+		default:
+			return new PacingPolicy(delay, 100, Math.max(delay, 3000), 10, 2.0, 1, 3.0);
+		}
+
+	}
+
+	public int initialGap() {
+
+		return initialGap;
+
+	}
+
+	public int minGap() {
+
+		return minGap;
+
+	}
+
+	public int maxGap() {
+
+		return maxGap;
+
+	}
+
+	public int step() {
+
+		return step;
+
+	}
+
+	public double backoff() {
+
+		return backoff;
+
+	}
+
+	public int maxInFlight() {
+
+		return maxInFlight;
+
+	}
+
+	public double slowFactor() {
+
+		return slowFactor;
+
+	}
+
+}
@@ -0,0 +1,380 @@
+package iRoomba;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Transport that keeps HTTP/1.1 connections to one device open between
+ * requests.
+ * <p>
+ * The Thinking Cleaner module is slow to accept new connections, so opening
+ * a fresh socket for every command costs more than the command itself. This
+ * Transport hands out warm keep-alive sockets from a small pool and only
+ * connects again when the pool is empty or the device dropped a socket.
+ * </p>
+ * <p>
+ * The pool size is also the number of requests which may be outstanding to
+ * the device at the same time; further callers wait for a connection.
+ * </p>
+ */
+public class PooledHttpTransport implements Transport {
+
+	/** Connections kept per device unless told otherwise. */
+	public static final int DEFAULT_POOL_SIZE = 2;
+	/** Milliseconds to wait for the device to accept a connection. */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 2000;
+	/** Milliseconds to wait for the device to answer a request. */
+	public static final int DEFAULT_READ_TIMEOUT = 5000;
+	/** Milliseconds an unused connection is kept before it is thrown away. */
+	public static final int DEFAULT_IDLE_TIMEOUT = 10000;
+
+	/** Transports shared by every Robot talking to the same address. */
+	private static final ConcurrentHashMap<String, PooledHttpTransport> shared = new ConcurrentHashMap<String, PooledHttpTransport>();
+
+	private final String key;
+	private final DeviceAddress address;
+	private final int poolSize;
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final int idleTimeout;
+
+	private final Semaphore permits;
+	private final ArrayDeque<Connection> idle = new ArrayDeque<Connection>();
+	private volatile boolean closed = false;
+
+	private final AtomicLong connectionsOpened = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+
+	public PooledHttpTransport(final String ipAddress) {
+
+		this(ipAddress, DEFAULT_POOL_SIZE);
+
+	}
+
+	public PooledHttpTransport(final String ipAddress, final int poolSize) {
+
+		this(ipAddress, poolSize, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+
+	}
+
+	/**
+	 * @param ipAddress
+	 *            The address of the device, optionally with a port.
+	 * @param poolSize
+	 *            The most connections that are opened to the device at once.
+	 * @param connectTimeout
+	 *            Milliseconds to wait for a connection to be accepted.
+	 * @param readTimeout
+	 *            Milliseconds to wait for a response.
+	 * @param idleTimeout
+	 *            Milliseconds an idle connection is kept for reuse.
+	 */
+	public PooledHttpTransport(final String ipAddress, final int poolSize, final int connectTimeout,
+			final int readTimeout, final int idleTimeout) {
+
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("poolSize must be at least 1");
+		}
+
+		this.key = ipAddress;
+		this.address = DeviceAddress.parse(ipAddress);
+		this.poolSize = poolSize;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.idleTimeout = idleTimeout;
+		this.permits = new Semaphore(poolSize, true);
+
+	}
+
+	/**
+	 * Returns the Transport shared by everything that talks to the given
+	 * address, creating it the first time it is asked for.
+	 */
+	public static PooledHttpTransport forAddress(final String ipAddress) {
+
+		PooledHttpTransport transport = shared.get(ipAddress);
+
+		while (transport == null || transport.closed) {
+			if (transport != null) {
+				shared.remove(ipAddress, transport);
+			}
+			final PooledHttpTransport created = new PooledHttpTransport(ipAddress);
+			transport = shared.putIfAbsent(ipAddress, created);
+			if (transport == null) {
+				transport = created;
+			}
+		}
+
+		return transport;
+
+	}
+
+	@Override
+	public byte[] get(final String path) throws IOException {
+
+		if (closed) {
+			throw new IOException("Transport to " + key + " is closed");
+		}
+
+		final byte[] request = address.encodeGet(path);
+
+		try {
+			permits.acquire();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a connection to " + key);
+		}
+
+		try {
+			requests.incrementAndGet();
+
+			final Connection pooled = takeIdle();
+			if (pooled != null) {
+				try {
+					return exchange(pooled, request);
+				} catch (final IOException e) {
+					// The device may have dropped the socket just after
+					// takeIdle() looked at it. A request that could not be
+					// written is safe to send again. Once written, the device
+					// may have acted on it even without answering, so only a
+					// status fetch that has no answer yet is sent again.
+					if (pooled.written && (pooled.decoder.isStarted() || !isIdempotent(path))) {
+						throw e;
+					}
+				}
+			}
+
+			return exchange(open(), request);
+		} finally {
+			permits.release();
+		}
+
+	}
+
+	/** The number of sockets this Transport has connected so far. */
+	public long connectionsOpened() {
+
+		return connectionsOpened.get();
+
+	}
+
+	/** The number of requests this Transport has carried so far. */
+	public long requests() {
+
+		return requests.get();
+
+	}
+
+	public int poolSize() {
+
+		return poolSize;
+
+	}
+
+	@Override
+	public void close() {
+
+		closed = true;
+		shared.remove(key, this);
+
+		final List<Connection> toClose;
+		synchronized (idle) {
+			toClose = new ArrayList<Connection>(idle);
+			idle.clear();
+		}
+
+		for (final Connection connection : toClose) {
+			connection.close();
+		}
+
+	}
+
+	private byte[] exchange(final Connection connection, final byte[] request) throws IOException {
+
+		final HttpResponseDecoder decoder = connection.decoder;
+		final ByteBuffer buffer = connection.buffer;
+		boolean reusable = false;
+
+		try {
+			decoder.reset();
+			connection.written = false;
+			connection.out.write(request);
+			connection.out.flush();
+			connection.written = true;
+
+			while (!decoder.isDone()) {
+				final int read = connection.in.read(buffer.array());
+				if (read < 0) {
+					if (!decoder.endOfStream()) {
+						throw new EOFException("Connection to " + key + " closed mid-response");
+					}
+					break;
+				}
+				buffer.clear();
+				buffer.limit(read);
+				decoder.feed(buffer);
+			}
+
+			// Anything left over was not asked for, so the socket cannot be
+			// trusted for the next request.
+			reusable = decoder.keepAlive() && !buffer.hasRemaining();
+
+			if (decoder.status() >= 400) {
+				throw new IOException("HTTP " + decoder.status() + " from " + key);
+			}
+
+			return decoder.body();
+		} finally {
+			buffer.clear();
+			buffer.limit(0);
+			if (reusable) {
+				release(connection);
+			} else {
+				connection.close();
+			}
+		}
+
+	}
+
+	/**
+	 * Whether sending a request twice does no harm. Status fetches only read;
+	 * commands such as dock or clean would be carried out twice.
+	 */
+	static boolean isIdempotent(final String path) {
+
+		return CommandClass.of(path) == CommandClass.STATUS;
+
+	}
+
+	/**
+	 * Takes the most recently used idle connection, throwing away any that
+	 * sat too long or that the device closed in the meantime.
+	 */
+	private Connection takeIdle() {
+
+		while (true) {
+			final Connection candidate;
+			synchronized (idle) {
+				candidate = idle.pollLast();
+			}
+
+			if (candidate == null) {
+				return null;
+			}
+
+			if ((System.nanoTime() - candidate.lastUsed) / 1000000L > idleTimeout || candidate.isStale()) {
+				candidate.close();
+			} else {
+				return candidate;
+			}
+		}
+
+	}
+
+	private void release(final Connection connection) {
+
+		connection.lastUsed = System.nanoTime();
+
+		synchronized (idle) {
+			if (!closed && idle.size() < poolSize) {
+				idle.addLast(connection);
+				return;
+			}
+		}
+
+		connection.close();
+
+	}
+
+	private Connection open() throws IOException {
+
+		// Opened as a channel so that idle sockets can be checked without
+		// blocking; requests still go through the socket's streams.
+		final SocketChannel channel = SocketChannel.open();
+		final Socket socket = channel.socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			socket.setSoTimeout(readTimeout);
+			socket.connect(new InetSocketAddress(address.host, address.port), connectTimeout);
+		} catch (final IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		connectionsOpened.incrementAndGet();
+
+		return new Connection(channel);
+
+	}
+
+	/**
+	 * A socket together with the buffers used to talk over it.
+	 */
+	private static final class Connection {
+
+		final SocketChannel channel;
+		final Socket socket;
+		final InputStream in;
+		final OutputStream out;
+		final ByteBuffer buffer = ByteBuffer.allocate(2048);
+		final HttpResponseDecoder decoder = new HttpResponseDecoder();
+		/** Whether the current request was handed to the socket whole. */
+		boolean written = false;
+		long lastUsed = System.nanoTime();
+
+		Connection(final SocketChannel channel) throws IOException {
+
+			this.channel = channel;
+			this.socket = channel.socket();
+			this.in = socket.getInputStream();
+			this.out = socket.getOutputStream();
+
+		}
+
+		/**
+		 * Whether the device closed the socket, or sent something it was not
+		 * asked for, while the socket sat in the pool. A request written to
+		 * such a socket would be lost.
+		 */
+		boolean isStale() {
+
+			try {
+				channel.configureBlocking(false);
+				buffer.clear();
+				final int read = channel.read(buffer);
+				buffer.clear();
+				buffer.limit(0);
+				channel.configureBlocking(true);
+				return read != 0;
+			} catch (final IOException e) {
+				return true;
+			}
+
+		}
+
+		void close() {
+
+			try {
+				channel.close();
+			} catch (final IOException e) {
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,225 @@
+package iRoomba;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A Transport that passes every request on to another one and logs it, with
+ * its response and nanosecond timings, for {@link ReplayTransport} to play
+ * back later.
+ * <p>
+ * Status fetches and commands all go through the Transport, so the log holds
+ * a whole session: what the Robot saw and what it was told to do. A Robot
+ * records by being given the Transport it would have used wrapped in one of
+ * these.
+ * </p>
+ * <p>
+ * Closing the recorder only closes the Transport it wraps if it was handed
+ * over for good, so a shared Transport such as
+ * {@link PooledHttpTransport#forAddress(String)} can be recorded safely.
+ * </p>
+ *
+ * <pre>
+ * Robot robot = new Robot(ip, RecordingTransport.open(new PooledHttpTransport(ip), log, true));
+ * </pre>
+ */
+public class RecordingTransport implements Transport {
+
+	private final Transport delegate;
+	/** Whether the delegate is closed along with this. */
+	private final boolean ownsDelegate;
+	private final DataOutputStream out;
+	private final long start = System.nanoTime();
+
+	/**
+	 * Guards the log. A lock rather than a monitor, so that a virtual thread
+	 * writing to the file does not pin its carrier.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Map<String, Integer> paths = new HashMap<String, Integer>();
+	private final List<byte[]> lastBodies = new ArrayList<byte[]>();
+	private long exchanges = 0;
+	private boolean closed = false;
+	/** Why logging stopped, if it could not be written. */
+	private IOException broken = null;
+
+	private RecordingTransport(final Transport delegate, final boolean ownsDelegate, final DataOutputStream out) {
+
+		this.delegate = delegate;
+		this.ownsDelegate = ownsDelegate;
+		this.out = out;
+
+	}
+
+	/**
+	 * Starts a new log, replacing any file already at the path. The Transport
+	 * wrapped is left open when the recorder is closed.
+	 */
+	public static RecordingTransport open(final Transport delegate, final Path log) throws IOException {
+
+		return open(delegate, log, false);
+
+	}
+
+	/**
+	 * Starts a new log, replacing any file already at the path.
+	 *
+	 * @param ownsDelegate
+	 *            Whether closing the recorder closes the Transport it wraps.
+	 *            Only pass true for a Transport nothing else uses.
+	 */
+	public static RecordingTransport open(final Transport delegate, final Path log, final boolean ownsDelegate)
+			throws IOException {
+
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(log)));
+
+		try {
+			out.writeInt(TrafficLog.MAGIC);
+			out.writeInt(TrafficLog.FORMAT);
+			out.writeLong(System.currentTimeMillis());
+		} catch (final IOException e) {
+			out.close();
+			throw e;
+		}
+
+		return new RecordingTransport(delegate, ownsDelegate, out);
+
+	}
+
+	@Override
+	public byte[] get(final String path) throws IOException {
+
+		final long at = System.nanoTime() - start;
+		final byte[] body;
+
+		try {
+			body = delegate.get(path);
+		} catch (final IOException e) {
+			log(at, System.nanoTime() - start - at, path, null, String.valueOf(e.getMessage()));
+			throw e;
+		}
+
+		log(at, System.nanoTime() - start - at, path, body, null);
+
+		return body;
+
+	}
+
+	/** The number of exchanges logged so far. */
+	public long exchanges() {
+
+		lock.lock();
+		try {
+			return exchanges;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Writes out the exchanges logged so far.
+	 *
+	 * @throws IOException
+	 *             If the log could not be written. The Robot is not held up
+	 *             by a failing log; logging just stops, and this reports why.
+	 */
+	public void flush() throws IOException {
+
+		lock.lock();
+		try {
+			if (broken != null) {
+				throw broken;
+			}
+			if (!closed) {
+				out.flush();
+			}
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Finishes the log, and closes the Transport it wraps if it owns it.
+	 */
+	@Override
+	public void close() {
+
+		lock.lock();
+		try {
+			if (!closed) {
+				closed = true;
+				out.close();
+			}
+		} catch (final IOException e) {
+			// Nothing left to do with a log that cannot be finished.
+		} finally {
+			lock.unlock();
+		}
+
+		if (ownsDelegate) {
+			delegate.close();
+		}
+
+	}
+
+	private void log(final long at, final long duration, final String path, final byte[] body,
+			final String failure) {
+
+		lock.lock();
+		try {
+			if (closed || broken != null) {
+				return;
+			}
+			write(at, duration, path, body, failure);
+			exchanges++;
+		} catch (final IOException e) {
+			broken = e;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	private void write(final long at, final long duration, final String path, final byte[] body,
+			final String failure) throws IOException {
+
+		TrafficLog.writeNumber(out, at);
+		TrafficLog.writeNumber(out, duration);
+
+		Integer id = paths.get(path);
+		if (id == null) {
+			id = paths.size();
+			paths.put(path, id);
+			lastBodies.add(null);
+			TrafficLog.writeNumber(out, id);
+			TrafficLog.writeString(out, path);
+		} else {
+			TrafficLog.writeNumber(out, id);
+		}
+
+		if (failure != null) {
+			out.writeByte(TrafficLog.FAILURE);
+			TrafficLog.writeString(out, failure);
+		} else if (Arrays.equals(body, lastBodies.get(id))) {
+			out.writeByte(TrafficLog.SAME_BODY);
+		} else {
+			out.writeByte(TrafficLog.BODY);
+			TrafficLog.writeNumber(out, body.length);
+			out.write(body);
+			lastBodies.set(id, body);
+		}
+
+	}
+
+}
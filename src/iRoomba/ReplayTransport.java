@@ -0,0 +1,362 @@
+package iRoomba;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Transport that answers from a log made by {@link RecordingTransport}
+ * instead of a device, so a control loop can be run again against the
+ * session it was recorded in.
+ * <p>
+ * Played back in time, the replay clock starts at the session's first
+ * request when the Robot makes its first one, and runs at {@code speed}
+ * times real time. A request is answered with the
+ * latest response recorded for its path at that point of the session,
+ * after the time the device originally took, so the Robot sees its sensors
+ * change when they did. Played back {@link #AS_FAST_AS_POSSIBLE}, each
+ * request simply takes the next response recorded for its path, without
+ * waiting.
+ * </p>
+ * <p>
+ * The commands the Robot sends are answered as recorded and kept, so a
+ * test can compare them with what the original session did. A control loop
+ * that has changed since the recording will send commands that were never
+ * recorded, such as a drive_only with other degrees. Those are answered as
+ * the same command was, or with a plain success if it never was, and are
+ * kept in {@link #unmatched()}. Status requests always follow the recording.
+ * </p>
+ */
+public class ReplayTransport implements Transport {
+
+	/** Replays without waiting, one recorded response per request. */
+	public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+	private final Map<String, Track> tracks;
+	/** The exchanges of every command, by command name only. */
+	private final Map<String, Track> commandTracks;
+	private final double speed;
+	/** The first and last request of the session. */
+	private final long begin;
+	private final long end;
+
+	/** Guarded by this. */
+	private long start = -1;
+	private final List<String> commands = new ArrayList<String>();
+	private final List<String> unmatched = new ArrayList<String>();
+
+	private ReplayTransport(final Map<String, Track> tracks, final Map<String, Track> commandTracks,
+			final double speed, final long begin, final long end) {
+
+		this.tracks = tracks;
+		this.commandTracks = commandTracks;
+		this.speed = speed;
+		this.begin = begin;
+		this.end = end;
+
+	}
+
+	/**
+	 * Loads a log for replay.
+	 *
+	 * @param speed
+	 *            How many times faster than real time to replay, such as 1 for
+	 *            the original speed, or {@link #AS_FAST_AS_POSSIBLE}.
+	 */
+	public static ReplayTransport open(final Path log, final double speed) throws IOException {
+
+		if (!(speed > 0)) {
+			throw new IllegalArgumentException("Speed must be positive");
+		}
+
+		final List<TrafficLog.Exchange> exchanges = TrafficLog.read(log);
+		// Requests made at once may have been logged out of order.
+		Collections.sort(exchanges, new Comparator<TrafficLog.Exchange>() {
+
+			@Override
+			public int compare(final TrafficLog.Exchange a, final TrafficLog.Exchange b) {
+
+				return Long.compare(a.at, b.at);
+
+			}
+
+		});
+		final Map<String, List<TrafficLog.Exchange>> byPath = new HashMap<String, List<TrafficLog.Exchange>>();
+		final Map<String, List<TrafficLog.Exchange>> byCommand = new HashMap<String, List<TrafficLog.Exchange>>();
+		long end = 0;
+
+		for (final TrafficLog.Exchange exchange : exchanges) {
+			add(byPath, exchange.path, exchange);
+			final String command = commandName(exchange.path);
+			if (command != null) {
+				add(byCommand, command, exchange);
+			}
+			end = Math.max(end, exchange.at);
+		}
+
+		final long begin = exchanges.isEmpty() ? 0 : exchanges.get(0).at;
+
+		return new ReplayTransport(tracks(byPath), tracks(byCommand), speed, begin, end);
+
+	}
+
+	@Override
+	public byte[] get(final String path) throws IOException {
+
+		final Track track = tracks.get(path);
+
+		if (track == null) {
+			return unrecorded(path);
+		}
+
+		final TrafficLog.Exchange exchange;
+
+		if (speed == AS_FAST_AS_POSSIBLE) {
+			exchange = track.next();
+		} else {
+			exchange = track.at(now());
+			pause(exchange, path);
+		}
+
+		if (path.startsWith("/command.json")) {
+			synchronized (this) {
+				commands.add(path);
+			}
+		}
+
+		return answer(exchange);
+
+	}
+
+	/** The commands requested so far, in order. */
+	public synchronized List<String> commands() {
+
+		return new ArrayList<String>(commands);
+
+	}
+
+	/**
+	 * The commands requested so far that were never made with the same path
+	 * in the recording, in order.
+	 */
+	public synchronized List<String> unmatched() {
+
+		return new ArrayList<String>(unmatched);
+
+	}
+
+	/**
+	 * Answers a command that was not recorded as the same command was, or
+	 * with a plain success if it never was.
+	 */
+	private byte[] unrecorded(final String path) throws IOException {
+
+		final String command = commandName(path);
+
+		if (command == null) {
+			throw new IOException("No recorded response for " + path);
+		}
+
+		synchronized (this) {
+			commands.add(path);
+			unmatched.add(path);
+		}
+
+		final Track track = commandTracks.get(command);
+
+		if (track == null) {
+			return ("{\"action\":\"" + command + "\",\"result\":\"success\"}").getBytes(StandardCharsets.UTF_8);
+		}
+
+		final TrafficLog.Exchange exchange;
+
+		if (speed == AS_FAST_AS_POSSIBLE) {
+			exchange = track.last();
+		} else {
+			exchange = track.at(now());
+			pause(exchange, path);
+		}
+
+		return answer(exchange);
+
+	}
+
+	/** Takes as long as the device did, at the replay's speed. */
+	private void pause(final TrafficLog.Exchange exchange, final String path) throws IOException {
+
+		try {
+			TimeUnit.NANOSECONDS.sleep((long) (exchange.duration / speed));
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while replaying " + path);
+		}
+
+	}
+
+	private static byte[] answer(final TrafficLog.Exchange exchange) throws IOException {
+
+		if (exchange.failure != null) {
+			throw new IOException(exchange.failure);
+		}
+
+		return exchange.body.clone();
+
+	}
+
+	/**
+	 * Whether the replay has run past the end of the recorded session. After
+	 * that, every path keeps getting its last response.
+	 */
+	public boolean isFinished() {
+
+		if (speed == AS_FAST_AS_POSSIBLE) {
+			for (final Track track : tracks.values()) {
+				if (!track.isFinished()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		synchronized (this) {
+			return start >= 0 && now() > end;
+		}
+
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/** Nanoseconds into the recorded session the replay has got to. */
+	private synchronized long now() {
+
+		final long real = System.nanoTime();
+
+		if (start < 0) {
+			start = real;
+		}
+
+		return begin + (long) ((real - start) * speed);
+
+	}
+
+	/** The command of a command.json path, or null for any other path. */
+	private static String commandName(final String path) {
+
+		if (!path.startsWith("/command.json")) {
+			return null;
+		}
+
+		final int start = path.indexOf("command=");
+		if (start < 0) {
+			return "";
+		}
+
+		final int end = path.indexOf('&', start);
+
+		return path.substring(start + "command=".length(), end < 0 ? path.length() : end);
+
+	}
+
+	private static void add(final Map<String, List<TrafficLog.Exchange>> lists, final String key,
+			final TrafficLog.Exchange exchange) {
+
+		List<TrafficLog.Exchange> list = lists.get(key);
+		if (list == null) {
+			list = new ArrayList<TrafficLog.Exchange>();
+			lists.put(key, list);
+		}
+		list.add(exchange);
+
+	}
+
+	private static Map<String, Track> tracks(final Map<String, List<TrafficLog.Exchange>> lists) {
+
+		final Map<String, Track> tracks = new HashMap<String, Track>();
+		for (final Map.Entry<String, List<TrafficLog.Exchange>> entry : lists.entrySet()) {
+			tracks.put(entry.getKey(), new Track(entry.getValue()));
+		}
+
+		return tracks;
+
+	}
+
+	/**
+	 * The exchanges recorded for one path, in the order they were requested.
+	 */
+	private static final class Track {
+
+		private final TrafficLog.Exchange[] exchanges;
+		private final long[] times;
+		/** Guarded by this. */
+		private int next = 0;
+
+		Track(final List<TrafficLog.Exchange> recorded) {
+
+			exchanges = recorded.toArray(new TrafficLog.Exchange[recorded.size()]);
+			times = new long[exchanges.length];
+			for (int i = 0; i < exchanges.length; i++) {
+				times[i] = exchanges[i].at;
+			}
+
+		}
+
+		/** The next exchange, or the last one once all have been used. */
+		synchronized TrafficLog.Exchange next() {
+
+			final TrafficLog.Exchange exchange = exchanges[Math.min(next, exchanges.length - 1)];
+			if (next < exchanges.length) {
+				next++;
+			}
+
+			return exchange;
+
+		}
+
+		/** The last exchange, without moving on. */
+		TrafficLog.Exchange last() {
+
+			return exchanges[exchanges.length - 1];
+
+		}
+
+		synchronized boolean isFinished() {
+
+			return next >= exchanges.length;
+
+		}
+
+		/**
+		 * The last exchange requested at or before a point of the session, or
+		 * the first one if the session had not requested the path yet.
+		 */
+		TrafficLog.Exchange at(final long time) {
+
+			int low = 0;
+			int high = times.length - 1;
+
+			while (low < high) {
+				final int middle = (low + high + 1) >>> 1;
+				if (times[middle] <= time) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			return exchanges[low];
+
+		}
+
+	}
+
+}
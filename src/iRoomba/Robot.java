@@ -1,13 +1,18 @@
 package iRoomba;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-
-// Dependencies are SimpleJSON and IOUtils.
-import org.apache.commons.io.IOUtils;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Dependency is SimpleJSON.
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 import org.json.simple.parser.ParseException;
@@ -18,10 +23,25 @@ import org.json.simple.parser.ParseException;
 public class Robot {
 
 	String ip;
+	/** Carries every request this Robot makes to its device. */
+	private final Transport transport;
+	/** Decides when the next request may go out. */
+	private final AdaptivePacer pacer = new AdaptivePacer();
 
-	/** Remembers all Robots that were initialized. */
+	/**
+	 * Remembers the addresses of all Robots that were initialized, each once.
+	 *
+	 * @deprecated Not safe to use from several threads. Add Robots to a
+	 *             {@link Fleet}, such as {@link Fleet#shared()}, which holds
+	 *             the Robots themselves.
+	 */
+	@Deprecated
 	public static ArrayList<String> Robots = new ArrayList<String>();
-	/** Preset delay that each command will take in Milliseconds */
+	/**
+	 * Preset delay between commands in Milliseconds. <br>
+	 * Each Robot's {@link AdaptivePacer} starts from this and then adjusts the
+	 * delay to how quickly its device answers.
+	 */
 	static int DELAY = 300;
 
 	/** The Roomba will not drive in dangerous situations */
@@ -38,29 +58,94 @@ public class Robot {
 	String result = null;
 	boolean cautious = true;
 
+	/** Reads responses into snapshots. Only used while holding its lock. */
+	private final StatusParser parser = new StatusParser();
+
+	/**
+	 * The current snapshot and the bodies behind it. Replaced as a whole after
+	 * each fetch, so a reader never sees half of an update.
+	 */
+	private final AtomicReference<Published> published = new AtomicReference<Published>(Published.NONE);
+	/** Numbers the snapshots this Robot makes. */
+	private final AtomicLong versions = new AtomicLong();
+	private final RobotMetrics metrics = new RobotMetrics();
+
 	/**
-	 * Determines whether the most recently updated data set was the fullStatus
-	 * object
+	 * The sections read since the last {@link #statusUpdate()}, and in the
+	 * round before it, one bit per {@link StatusSection}.
 	 */
-	private boolean useFullStatus = false;
+	private final AtomicInteger reads = new AtomicInteger();
+	private volatile int previousReads = 0;
 	/**
-	 * Determines whether the most recently updated data set was the
-	 * simpleStatus object
+	 * The same, in rounds of the {@link StatusPoller} instead, so polling
+	 * does not cut short the rounds of the caller's own updates.
 	 */
-	private boolean useSimpleStatus = false;
+	private final AtomicInteger polledReads = new AtomicInteger();
+	private volatile int previousPolledReads = 0;
+
+	/** The status fetches in progress, which later callers wait on. */
+	private final AtomicReference<CompletableFuture<StatusSnapshot>> simpleFetch = new AtomicReference<CompletableFuture<StatusSnapshot>>();
+	private final AtomicReference<CompletableFuture<StatusSnapshot>> fullFetch = new AtomicReference<CompletableFuture<StatusSnapshot>>();
+
+	/** How long each section may be answered from, indexed by ordinal. */
+	private final AtomicReferenceArray<CachePolicy> cachePolicies = new AtomicReferenceArray<CachePolicy>(
+			StatusSection.values().length);
+
+	/** Told about the changes between one snapshot and the next. */
+	private final CopyOnWriteArrayList<RobotEventListener> listeners = new CopyOnWriteArrayList<RobotEventListener>();
+	/** Passes each event on to every listener. */
+	private final RobotEventListener dispatcher = new RobotEventListener() {
+
+		@Override
+		public void onEvent(final RobotEvent event) {
+
+			for (final RobotEventListener listener : listeners) {
+				try {
+					listener.onEvent(event);
+				} catch (final RuntimeException e) {
+					// One faulty listener must not keep the event from the others.
+				}
+			}
+
+		}
 
-	private JSONObject simpleStatus = null;
-	private JSONObject firmware = null;
-	private JSONObject tc_status = null;
-	private JSONObject power_status = null;
-	private JSONObject buttons = null;
-	private JSONObject sensors = null;
-	private JSONObject webview = null;
+	};
 
+	private volatile AsyncRobot async = null;
+
+	/**
+	 * Creates a Robot that talks to its device over keep-alive connections
+	 * shared with any other Robot using the same address.
+	 */
 	public Robot(final String ipAddress) {
 
+		this(ipAddress, PooledHttpTransport.forAddress(ipAddress));
+
+	}
+
+	/**
+	 * Creates a Robot that sends all of its requests through the given
+	 * Transport.
+	 */
+	public Robot(final String ipAddress, final Transport transport) {
+
 		ip = ipAddress;
-		Robots.add(ip);
+		this.transport = transport;
+		for (final StatusSection section : StatusSection.values()) {
+			cachePolicies.set(section.ordinal(), CachePolicy.defaults(section));
+		}
+		synchronized (Robots) {
+			if (!Robots.contains(ip)) {
+				Robots.add(ip);
+			}
+		}
+
+	}
+
+	/** The address of the device. */
+	public String ip() {
+
+		return ip;
 
 	}
 
@@ -69,45 +154,298 @@ public class Robot {
 	 * Updates the information gathered by the Thinking Cleaner device. <br>
 	 * Allows for the retrieval of the complete status or a simpler status.
 	 * 
+	 * If another thread is already fetching the same status, or the full
+	 * status, this waits for that fetch instead of making another request.
+	 * 
 	 * @param wantFullStatus
 	 *            Fetch the full status update?
 	 */
 	public void statusUpdate(final boolean wantFullStatus) {
 
-		if (wantFullStatus) {
+		try {
+			fetch(wantFullStatus, false);
+		} catch (final IOException e) {
+		}
+
+	}
+
+	/**
+	 * Updates the information gathered by the Thinking Cleaner device,
+	 * fetching the full status only if the getters called lately need it.
+	 * <p>
+	 * The small status.json is enough for the cleaner state, charge and the
+	 * other {@link StatusSection#STATUS} fields. Once a getter for any other
+	 * section has been called, full_status.json is fetched, until that
+	 * section has gone unread for two updates in a row.
+	 * </p>
+	 * 
+	 * @see RobotMetrics#chosen(StatusEndpoint)
+	 */
+	public void statusUpdate() {
+
+		statusUpdate(chooseEndpoint() == StatusEndpoint.FULL);
+
+	}
+
+	/**
+	 * Picks the smallest endpoint that covers what has been read lately, and
+	 * starts a new round of watching.
+	 */
+	StatusEndpoint chooseEndpoint() {
+
+		final int current = reads.getAndSet(0);
+		final int recent = current | previousReads;
+		previousReads = current;
+
+		return endpointFor(recent, false);
+
+	}
+
+	/**
+	 * Picks the endpoint for a background poll as {@link #chooseEndpoint()}
+	 * does for the caller, keeping rounds and metrics of its own.
+	 */
+	StatusEndpoint choosePolledEndpoint() {
 
-			final String statusAddress = "http://" + ip + "/full_status.json";
-			final JSONObject FullJSONStatus = getJSON(statusAddress);
+		final int current = polledReads.getAndSet(0);
+		final int recent = current | previousPolledReads;
+		previousPolledReads = current;
 
-			/** What action was expected to be transmitted and executed */
-			action = toStr(FullJSONStatus.get("action"));
-			/** Is the command itself a valid command? */
-			result = toStr(FullJSONStatus.get("result"));
+		return endpointFor(recent, true);
 
-			firmware = (JSONObject) FullJSONStatus.get("firmware");
-			tc_status = (JSONObject) FullJSONStatus.get("tc_status");
-			power_status = (JSONObject) FullJSONStatus.get("power_status");
-			buttons = (JSONObject) FullJSONStatus.get("buttons");
-			sensors = (JSONObject) FullJSONStatus.get("sensors");
-			webview = (JSONObject) FullJSONStatus.get("webview");
+	}
+
+	private StatusEndpoint endpointFor(final int recentReads, final boolean polled) {
 
-			useFullStatus = true;
-			useSimpleStatus = false;
+		final StatusEndpoint endpoint = (recentReads & ~(1 << StatusSection.STATUS.ordinal())) != 0
+				? StatusEndpoint.FULL : StatusEndpoint.SIMPLE;
+		metrics.onChoice(endpoint, polled);
 
-		} else {
+		return endpoint;
+
+	}
 
-			final String statusAddress = "http://" + ip + "/status.json";
-			final JSONObject SimpleJSONStatus = getJSON(statusAddress);
+	/**
+	 * Does the work of {@link #statusUpdate(boolean)}, but lets the caller
+	 * know when the device could not be read.
+	 * 
+	 * @param permitHeld
+	 *            Whether the caller already holds a {@link CommandClass#STATUS}
+	 *            permit from the pacer. It is handed back if the caller ends up
+	 *            waiting on another fetch.
+	 * @return The status this Robot now has.
+	 */
+	StatusSnapshot fetch(final boolean wantFullStatus, final boolean permitHeld) throws IOException {
 
-			action = SimpleJSONStatus.get("action").toString();
-			result = SimpleJSONStatus.get("result").toString();
+		final AtomicReference<CompletableFuture<StatusSnapshot>> slot = wantFullStatus ? fullFetch : simpleFetch;
+		final CompletableFuture<StatusSnapshot> mine = new CompletableFuture<StatusSnapshot>();
+		CompletableFuture<StatusSnapshot> running;
 
-			simpleStatus = (JSONObject) SimpleJSONStatus.get("status");
+		do {
+			running = fetchInFlight(wantFullStatus);
+		} while (running == null && !slot.compareAndSet(null, mine));
 
-			useFullStatus = false;
-			useSimpleStatus = true;
+		if (running != null) {
+			metrics.onSharedFetch();
+			if (permitHeld) {
+				pacer.cancel(CommandClass.STATUS);
+			}
+			return await(running);
+		}
 
+		try {
+			if (!permitHeld) {
+				try {
+					pacer.acquire(CommandClass.STATUS);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+			final StatusSnapshot snapshot = refresh(wantFullStatus);
+			mine.complete(snapshot);
+			return snapshot;
+		} catch (final IOException | RuntimeException e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			slot.compareAndSet(mine, null);
 		}
+
+	}
+
+	/**
+	 * The fetch in progress whose result would answer a request for this kind
+	 * of status, or null. A full fetch answers either kind.
+	 */
+	private CompletableFuture<StatusSnapshot> fetchInFlight(final boolean wantFullStatus) {
+
+		final CompletableFuture<StatusSnapshot> full = fullFetch.get();
+
+		return full != null || wantFullStatus ? full : simpleFetch.get();
+
+	}
+
+	private static StatusSnapshot await(final CompletableFuture<StatusSnapshot> fetch) throws IOException {
+
+		try {
+			return fetch.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		}
+
+	}
+
+	/**
+	 * Fetches and publishes a status. <br>
+	 * The caller must already hold a {@link CommandClass#STATUS} permit from
+	 * the pacer.
+	 */
+	private StatusSnapshot refresh(final boolean wantFullStatus) throws IOException {
+
+		final StatusEndpoint endpoint = wantFullStatus ? StatusEndpoint.FULL : StatusEndpoint.SIMPLE;
+		final byte[] body = timedGet(CommandClass.STATUS, endpoint.path());
+		metrics.onFetch(endpoint, body.length);
+		final StatusSnapshot response;
+
+		synchronized (parser) {
+			response = parser.parse(body, wantFullStatus);
+		}
+
+		/** What action was expected to be transmitted and executed */
+		action = response.action();
+		/** Is the command itself a valid command? */
+		result = response.result();
+
+		final RawStatus raw = new RawStatus(body);
+		Published current;
+		Published next;
+
+		do {
+			current = published.get();
+			next = current.with(response.after(current.snapshot, versions.incrementAndGet(), ip), raw);
+		} while (!published.compareAndSet(current, next));
+
+		if (!listeners.isEmpty()) {
+			RobotEvent.diff(this, current.snapshot, next.snapshot, dispatcher);
+		}
+
+		return next.snapshot;
+
+	}
+
+	/**
+	 * Replaces how long the getters for one section may answer from the
+	 * status this Robot already has.
+	 */
+	public void cachePolicy(final StatusSection section, final CachePolicy policy) {
+
+		cachePolicies.set(section.ordinal(), policy);
+
+	}
+
+	public CachePolicy cachePolicy(final StatusSection section) {
+
+		return cachePolicies.get(section.ordinal());
+
+	}
+
+	/**
+	 * Milliseconds since the data behind a section was fetched, or -1 if it
+	 * never has been. Does not fetch anything.
+	 */
+	public long age(final StatusSection section) {
+
+		return age(published.get().snapshot, section);
+
+	}
+
+	/**
+	 * The most recent status, as one immutable snapshot. <br>
+	 * Control loops can take this once per tick and read every field from it
+	 * without going back to the Robot. Reads made through the snapshot are
+	 * not seen by {@link #statusUpdate()}, so pass it the endpoint instead.
+	 */
+	public StatusSnapshot snapshot() {
+
+		return latest();
+
+	}
+
+	/**
+	 * The snapshot this Robot has now, or null. Never fetches anything.
+	 */
+	StatusSnapshot currentSnapshot() {
+
+		return published.get().snapshot;
+
+	}
+
+	/**
+	 * Polls this Robot in the background with the {@link StatusPoller#shared()
+	 * shared poller} and passes every status to the listener, until the
+	 * subscription is cancelled.
+	 */
+	public Subscription subscribe(final StatusListener listener) {
+
+		return StatusPoller.shared().subscribe(this, listener);
+
+	}
+
+	/**
+	 * A publisher of this Robot's statuses for subscribers that each take them
+	 * at their own pace. It polls the Robot while it has subscribers.
+	 *
+	 * @see SnapshotPublisher
+	 */
+	public SnapshotPublisher publisher(final OverflowPolicy policy, final int capacity) {
+
+		return SnapshotPublisher.of(policy, capacity, this);
+
+	}
+
+	/**
+	 * Passes the listener every change this Robot sees between one status and
+	 * the next, such as a bumper being pressed or the cleaner state changing.
+	 * <br>
+	 * The Robot is polled with the {@link StatusPoller#shared() shared
+	 * poller} for as long as the subscription lasts, asking for the full
+	 * status so that the sensors are included. Events are delivered on the
+	 * thread that fetched the status.
+	 */
+	public Subscription addListener(final RobotEventListener listener) {
+
+		listeners.add(listener);
+		final Subscription polling = StatusPoller.shared().subscribe(this, new StatusListener() {
+
+			@Override
+			public void onStatus(final Robot robot, final StatusSnapshot snapshot) {
+
+				// The events are sent as the status is published.
+
+			}
+
+		}, StatusEndpoint.FULL);
+
+		return new Subscription() {
+
+			@Override
+			public void cancel() {
+
+				polling.cancel();
+				listeners.remove(listener);
+
+			}
+
+		};
+
 	}
 
 	/**
@@ -116,11 +454,11 @@ public class Robot {
 	 */
 	public JSONObject getSimpleStatus() {
 
-		if (simpleStatus == null) {
+		if (published.get().simpleBody == null) {
 			statusUpdate(false);
 		}
 
-		return simpleStatus;
+		return section(published.get().simpleBody, "status");
 	}
 
 	/**
@@ -129,11 +467,13 @@ public class Robot {
 	 */
 	public String name() {
 
-		if (simpleStatus == null) {
+		final StatusSnapshot status = published.get().snapshot;
+
+		if (status == null || status.name() == null) {
 			statusUpdate(false);
 		}
 
-		return toStr(simpleStatus.get("name"));
+		return checked(published.get().snapshot, StatusSection.STATUS, cachePolicy(StatusSection.STATUS)).name();
 
 	}
 
@@ -141,91 +481,72 @@ public class Robot {
 	 * Accesses the firmware JSON object so new data can accessed by developers
 	 * if it cannot already be accessed via a method.
 	 * </p>
-	 * This will check to see if the required status value has been retrieved,
-	 * and will fetch it if it has not.
+	 * This will check to see if the required status value has been retrieved
+	 * recently enough for its {@link CachePolicy}, and will fetch it if it has
+	 * not.
 	 * </p>
 	 * 
 	 * @return Firmware JSONObject.
 	 */
 	public JSONObject firmware() {
 
-		if (firmware == null) {
-			statusUpdate(true);
-		}
+		full(StatusSection.FIRMWARE);
 
-		return firmware;
+		return section(published.get().fullBody, "firmware");
 
 	}
 
 	public String version() {
 
-		firmware();
-
-		return toStr(firmware.get("version"));
+		return full(StatusSection.FIRMWARE).firmwareVersion();
 
 	}
 
 	public String wifiVersion() {
 
-		firmware();
-
-		return toStr(firmware.get("wifi_version"));
+		return full(StatusSection.FIRMWARE).wifiVersion();
 
 	}
 
 	public String UUID() {
 
-		firmware();
-
-		return toStr(firmware.get("uuid"));
+		return full(StatusSection.FIRMWARE).uuid();
 
 	}
 
 	public String macAddress() {
 
-		firmware();
-
-		return toStr(firmware.get("mac_address"));
+		return full(StatusSection.FIRMWARE).macAddress();
 
 	}
 
 	public boolean usesDHCP() {
 
-		firmware();
-
-		return toBool(firmware.get("DHCP"));
+		return full(StatusSection.FIRMWARE).usesDHCP();
 
 	}
 
 	public boolean hasBeenBackedUp() {
 
-		firmware();
-
-		return toBool(firmware.get("has_been_backed_up"));
+		return full(StatusSection.FIRMWARE).hasBeenBackedUp();
 
 	}
 
 	public boolean hasAuthToken() {
 
-		firmware();
-
-		return toBool(firmware.get("has_auth_token"));
+		return full(StatusSection.FIRMWARE).hasAuthToken();
 
 	}
 
 	public String bootStatus() {
 
-		firmware();
-
-		return toStr(firmware.get("boot_status"));
+		return full(StatusSection.FIRMWARE).bootStatus();
 
 	}
 
 	public String bootVersion() {
 
-		firmware();
-
-		return toStr(firmware.get("boot_version"));
+		return full(StatusSection.FIRMWARE).bootVersion();
 
 	}
 
@@ -238,9 +559,7 @@ public class Robot {
 	 */
 	public boolean autoUpdate() {
 
-		firmware();
-
-		return toBool(firmware.get("auto_update"));
+		return full(StatusSection.FIRMWARE).autoUpdate();
 
 	}
 
@@ -258,9 +577,7 @@ public class Robot {
 	 */
 	public boolean autoDock() {
 
-		firmware();
-
-		return toBool(firmware.get("auto_dock"));
+		return full(StatusSection.FIRMWARE).autoDock();
 
 	}
 
@@ -278,9 +595,7 @@ public class Robot {
 	 */
 	public boolean restartAfterCharge() {
 
-		firmware();
-
-		return toBool(firmware.get("restart_AC"));
+		return full(StatusSection.FIRMWARE).restartAfterCharge();
 
 	}
 
@@ -292,9 +607,7 @@ public class Robot {
 	 */
 	public int dockAt() {
 
-		firmware();
-
-		return toInt(firmware.get("dock_at"));
+		return full(StatusSection.FIRMWARE).dockAt();
 
 	}
 
@@ -304,9 +617,7 @@ public class Robot {
 	 */
 	public int stopAt() {
 
-		firmware();
-
-		return toInt(firmware.get("stop_at"));
+		return full(StatusSection.FIRMWARE).stopAt();
 
 	}
 
@@ -315,9 +626,7 @@ public class Robot {
 	 */
 	public String getTime() {
 
-		firmware();
-
-		return toStr(firmware.get("time_h_m"));
+		return full(StatusSection.FIRMWARE).time();
 
 	}
 
@@ -327,11 +636,9 @@ public class Robot {
 	 */
 	public JSONObject TCStatus() {
 
-		if (tc_status == null) {
-			statusUpdate(true);
-		}
+		full(StatusSection.TC_STATUS);
 
-		return tc_status;
+		return section(published.get().fullBody, "tc_status");
 
 	}
 
@@ -340,17 +647,13 @@ public class Robot {
 	 */
 	public String TCName() {
 
-		TCStatus();
-
-		return toStr(tc_status.get("name"));
+		return full(StatusSection.TC_STATUS).tcName();
 
 	}
 
 	public String TCModelNumber() {
 
-		TCStatus();
-
-		return toStr(tc_status.get("modelnr"));
+		return full(StatusSection.TC_STATUS).modelNumber();
 
 	}
 
@@ -362,25 +665,19 @@ public class Robot {
 	 */
 	public String lastCleaningTime() {
 
-		TCStatus();
-
-		return toStr(tc_status.get("cleaning_time"));
+		return full(StatusSection.TC_STATUS).cleaningTime();
 
 	}
 
 	public String totalCleaningTime() {
 
-		TCStatus();
-
-		return toStr(tc_status.get("cleaning_time_total"));
+		return full(StatusSection.TC_STATUS).cleaningTimeTotal();
 
 	}
 
 	public String totalCleaningDistance() {
 
-		TCStatus();
-
-		return toStr(tc_status.get("cleaning_distance"));
+		return full(StatusSection.TC_STATUS).cleaningDistance();
 
 	}
 
@@ -392,9 +689,7 @@ public class Robot {
 	 */
 	public int dirtDetections() {
 
-		TCStatus();
-
-		return toInt(tc_status.get("dirt_detected"));
+		return full(StatusSection.TC_STATUS).dirtDetections();
 
 	}
 
@@ -408,17 +703,13 @@ public class Robot {
 	 */
 	public boolean needsEmptied() {
 
-		TCStatus();
-
-		return toBool(tc_status.get("bin_status"));
+		return full(StatusSection.TC_STATUS).binFull();
 
 	}
 
 	public boolean getServerConnection() {
 
-		TCStatus();
-
-		return toBool(tc_status.get("server_connection"));
+		return full(StatusSection.TC_STATUS).serverConnection();
 
 	}
 
@@ -431,36 +722,19 @@ public class Robot {
 	 */
 	public boolean getVacuumDriveStatus() {
 
-		TCStatus();
-
-		return toBool(tc_status.get("vacuum_drive"));
+		return full(StatusSection.TC_STATUS).vacuumDrive();
 
 	}
 
 	public int getCleanDelay() {
 
-		TCStatus();
-
-		return toInt(tc_status.get("clean_delay"));
+		return full(StatusSection.TC_STATUS).cleanDelay();
 
 	}
 
 	public boolean isCleaning() {
 
-		// If no information has been retrieved yet.
-		if (!useFullStatus && !useSimpleStatus) {
-			statusUpdate(false);
-		}
-
-		boolean cleaning = false;
-
-		if (useFullStatus) {
-			cleaning = toBool(power_status.get("cleaning"));
-		} else {
-			cleaning = toBool(simpleStatus.get("cleaning"));
-		}
-
-		return cleaning;
+		return latest().isCleaning();
 
 	}
 
@@ -469,49 +743,35 @@ public class Robot {
 	 */
 	public int getScheduleSerialNumber() {
 
-		// If no information has been retrieved yet.
-		if (!useFullStatus && !useSimpleStatus) {
-			statusUpdate(false);
-		}
-
-		int schedule_serial_number = 0;
-
-		if (useFullStatus) {
-			schedule_serial_number = toInt(tc_status.get("schedule_serial_number"));
-		} else {
-			schedule_serial_number = toInt(simpleStatus.get("schedule_serial_number"));
-		}
-
-		return schedule_serial_number;
+		return latest().scheduleSerialNumber();
 
 	}
 
 	public JSONObject powerStatus() {
 
-		if (power_status == null) {
-			statusUpdate(true);
-		}
+		full(StatusSection.POWER_STATUS);
 
-		return power_status;
+		return section(published.get().fullBody, "power_status");
 
 	}
 
-	public String cleanerState() {
+	/**
+	 * The current state of the Robot.
+	 */
+	public CleanerState state() {
 
-		// If no information has been retrieved yet.
-		if (!useFullStatus && !useSimpleStatus) {
-			statusUpdate(false);
-		}
+		return latest().cleanerState();
 
-		String state = null;
+	}
 
-		if (useFullStatus) {
-			state = toStr(power_status.get("cleaner_state"));
-		} else {
-			state = toStr(simpleStatus.get("cleaner_state"));
-		}
+	/**
+	 * The cleaner_state code as the device sent it, such as "st_base". A code
+	 * this API does not know is returned as it came, while {@link #state()}
+	 * gives {@link CleanerState#UNKNOWN} for it.
+	 */
+	public String cleanerState() {
 
-		return state;
+		return latest().cleanerStateCode();
 
 	}
 
@@ -520,213 +780,122 @@ public class Robot {
 	 */
 	public int current() {
 
-		powerStatus();
-
-		return toInt(power_status.get("current"));
+		return full(StatusSection.POWER_STATUS).current();
 
 	}
 
 	public int charge() {
 
-		// If no information has been retrieved yet.
-		if (!useFullStatus && !useSimpleStatus) {
-			statusUpdate(false);
-		}
-
-		int charge = 0;
-
-		if (useFullStatus) {
-			charge = toInt(power_status.get("charge"));
-		} else {
-			charge = toInt(simpleStatus.get("charge"));
-		}
-
-		return charge;
+		return latest().charge();
 
 	}
 
 	public int batteryCharge() {
 
-		powerStatus();
-
-		return toInt(power_status.get("battery_charge"));
+		return full(StatusSection.POWER_STATUS).batteryCharge();
 
 	}
 
 	public int capacity() {
 
-		// If no information has been retrieved yet.
-		if (!useFullStatus && !useSimpleStatus) {
-			statusUpdate(false);
-		}
-
-		int capacity = 0;
-
-		if (useFullStatus) {
-			capacity = toInt(simpleStatus.get("capacity"));
-		} else {
-			capacity = toInt(simpleStatus.get("capacity"));
-		}
-
-		return capacity;
+		return latest().capacity();
 
 	}
 
 	public int voltage() {
 
-		powerStatus();
-
-		return toInt(power_status.get("voltage"));
+		return full(StatusSection.POWER_STATUS).voltage();
 
 	}
 
 	public int temperature() {
 
-		powerStatus();
-
-		return toInt(power_status.get("temperature"));
+		return full(StatusSection.POWER_STATUS).temperature();
 
 	}
 
 	public String batteryCondition() {
 
-		powerStatus();
-
-		return toStr(power_status.get("cleaner_state"));
+		return full(StatusSection.POWER_STATUS).cleanerStateCode();
 
 	}
 
 	public boolean isLowOnPower() {
 
-		powerStatus();
-
-		return toBool(power_status.get("low_power"));
+		return full(StatusSection.POWER_STATUS).isLowOnPower();
 
 	}
 
 	public JSONObject buttonData() {
 
-		if (buttons == null) {
-			statusUpdate(true);
-		}
+		full(StatusSection.BUTTONS);
 
-		return buttons;
+		return section(published.get().fullBody, "buttons");
 
 	}
 
-	public boolean buttonPressed(String buttonName) {
-
-		final boolean clean_button = toBool(buttons.get("clean_button"));
-		final boolean spot_button = toBool(buttons.get("spot_button"));
-		final boolean dock_button = toBool(buttons.get("dock_button"));
+	public boolean buttonPressed(final Button button) {
 
-		boolean buttonPressed = false;
+		return full(StatusSection.BUTTONS).isPressed(button);
 
-		buttonName = buttonName.toLowerCase();
-
-		switch (buttonName) {
-		case "a":
-		case "any":
-		case "all":
-			buttonPressed = clean_button || spot_button || dock_button;
-			break;
-
-		case "c":
-		case "cln":
-		case "clean":
-		case "clean button":
-			buttonPressed = clean_button;
-			break;
+	}
 
-		case "s":
-		case "spt":
-		case "spot":
-		case "spot button":
-			buttonPressed = spot_button;
-			break;
+	/**
+	 * @param buttonName
+	 *            "any", "clean", "spot" or "dock", or a short form of these.
+	 * @see #buttonPressed(Button)
+	 */
+	public boolean buttonPressed(final String buttonName) {
 
-		case "d":
-		case "dck":
-		case "dock":
-		case "dock button":
-			buttonPressed = dock_button;
-			break;
-		}
+		final Button button = Button.of(buttonName);
 
-		return buttonPressed;
+		return button != null && buttonPressed(button);
 
 	}
 
 	public JSONObject sensors() {
 
-		return sensors;
-
-	}
+		full(StatusSection.SENSORS);
 
-	public boolean bumperPressed(String bumperLocation) {
+		return section(published.get().fullBody, "sensors");
 
-		sensors();
+	}
 
-		final boolean bumper_state = toBool(sensors.get("bumper_state"));
-		final boolean bumper_left_state = toBool(sensors.get("bumper_left_state"));
-		final boolean bumper_right_state = toBool(sensors.get("bumper_right_state"));
+	public boolean bumperPressed(final Bumper bumper) {
 
-		boolean bumperState = false;
+		return full(StatusSection.SENSORS).isPressed(bumper);
 
-		bumperLocation = bumperLocation.toLowerCase();
+	}
 
-		switch (bumperLocation) {
-		case "any":
-		case "all":
-		case "a":
-			bumperState = bumper_state;
-			break;
+	/**
+	 * @param bumperLocation
+	 *            "any", "left" or "right", or a short form of these.
+	 * @see #bumperPressed(Bumper)
+	 */
+	public boolean bumperPressed(final String bumperLocation) {
 
-		case "left":
-		case "l":
-			bumperState = bumper_left_state;
-			break;
+		final Bumper bumper = Bumper.of(bumperLocation);
 
-		case "right":
-		case "r":
-			bumperState = bumper_right_state;
-			break;
-		}
-
-		return bumperState;
+		return bumper != null && bumperPressed(bumper);
 
 	}
 
-	public boolean wheelDropped(String wheelLocation) {
-
-		sensors();
-
-		final boolean wheel_drop_left = toBool(sensors.get("wheel_drop_left"));
-		final boolean wheel_drop_right = toBool(sensors.get("wheel_drop_right"));
-
-		boolean wheelState = false;
+	public boolean wheelDropped(final Wheel wheel) {
 
-		wheelLocation = wheelLocation.toLowerCase();
+		return full(StatusSection.SENSORS).hasDropped(wheel);
 
-		switch (wheelLocation) {
-		case "any":
-		case "all":
-		case "a":
-			wheelState = wheel_drop_left || wheel_drop_right;
-			break;
+	}
 
-		case "left":
-		case "l":
-			wheelState = wheel_drop_left;
-			break;
+	/**
+	 * @param wheelLocation
+	 *            "any", "left" or "right", or a short form of these.
+	 * @see #wheelDropped(Wheel)
+	 */
+	public boolean wheelDropped(final String wheelLocation) {
 
-		case "right":
-		case "r":
-			wheelState = wheel_drop_right;
-			break;
-		}
+		final Wheel wheel = Wheel.of(wheelLocation);
 
-		return wheelState;
+		return wheel != null && wheelDropped(wheel);
 
 	}
 
@@ -740,17 +909,23 @@ public class Robot {
 	 */
 	public boolean detectsWall(final boolean virtual) {
 
-		sensors();
+		final StatusSnapshot status = full(StatusSection.SENSORS);
 
-		final boolean wall = toBool(sensors.get("wall"));
-		final boolean virtual_wall = toBool(sensors.get("virtual_wall"));
-
-		final boolean wallDetected = virtual ? virtual_wall : wall;
+		final boolean wallDetected = virtual ? status.virtualWall() : status.wall();
 
 		return wallDetected;
 
 	}
 
+	/**
+	 * Allows the robot to check cliff is present on one side, or any side.
+	 */
+	public boolean detectsCliff(final Cliff cliff) {
+
+		return full(StatusSection.SENSORS).detects(cliff);
+
+	}
+
 	/**
 	 * Allows the robot to check cliff is present on the <br>
 	 * "left", "front left", "front right", "right", or "any" side.
@@ -758,292 +933,334 @@ public class Robot {
 	 * 
 	 * @param cliffLocation
 	 * @return cliffState
+	 * @see #detectsCliff(Cliff)
 	 */
-	public boolean detectsCliff(String cliffLocation) {
+	public boolean detectsCliff(final String cliffLocation) {
 
-		sensors();
+		final Cliff cliff = Cliff.of(cliffLocation);
 
-		boolean cliffState = false;
+		return cliff != null && detectsCliff(cliff);
 
-		cliffLocation = cliffLocation.toLowerCase();
+	}
 
-		switch (cliffLocation) {
-		case "any":
-		case "all":
-		case "a":
-			final boolean cliff_left = toBool(sensors.get("cliff_left"));
-			final boolean cliff_front_left = toBool(sensors.get("cliff_front_left"));
-			final boolean cliff_right = toBool(sensors.get("cliff_right"));
-			final boolean cliff_front_right = toBool(sensors.get("cliff_front_right"));
-			cliffState = cliff_left || cliff_right || cliff_front_left || cliff_front_right;
-			break;
+	public boolean detectsDirt() {
 
-		case "left":
-		case "l":
-			cliffState = toBool(sensors.get("cliff_left"));
-			break;
+		return full(StatusSection.SENSORS).dirtDetect();
 
-		case "front left":
-		case "fl":
-			cliffState = toBool(sensors.get("cliff_front_left"));
-			break;
+	}
 
-		case "front right":
-		case "fr":
-			cliffState = toBool(sensors.get("cliff_front_right"));
-			break;
+	public boolean detectsLightBump() {
 
-		case "right":
-		case "r":
-			cliffState = toBool(sensors.get("cliff_right"));
-			break;
-		}
+		return full(StatusSection.SENSORS).lightBump();
+
+	}
+
+	public boolean hasMainbrushCurrent() {
 
-		return cliffState;
+		return full(StatusSection.SENSORS).mainbrushCurrent();
 
 	}
 
-	public boolean detectsDirt() {
+	public boolean hasSidebrushCurrent() {
+
+		return full(StatusSection.SENSORS).sidebrushCurrent();
 
-		sensors();
+	}
+
+	public boolean detectsHomebase() {
 
-		return toBool(sensors.get("dirt_detect"));
+		return full(StatusSection.SENSORS).homebaseDetected();
 
 	}
 
-	public boolean detectsLightBump() {
+	public boolean isNearHomebase() {
+
+		return latest().nearHomebase();
 
-		sensors();
+	}
+	
+	/**
+	 * Access the infrared sensors on the Roomba.
+	 * @return An integer representing the location relative to the sensor.
+	 */
+	public int getIRReadings(final IrSensor sensor) {
 
-		return toBool(sensors.get("light_bump"));
+		return full(StatusSection.SENSORS).irReading(sensor);
 
 	}
 
-	public boolean hasMainbrushCurrent() {
+	/**
+	 * Access the infrared sensors on the Roomba.
+	 * @param IRLocation Can be omni, left, or right (o, l, r).
+	 * @return An integer representing the location relative to the sensor.
+	 * @see #getIRReadings(IrSensor)
+	 */
+	public int getIRReadings(final String IRLocation) {
 
-		sensors();
+		final IrSensor sensor = IrSensor.of(IRLocation);
 
-		return toBool(sensors.get("mainbrush_current"));
+		return sensor == null ? 0 : getIRReadings(sensor);
 
 	}
 
-	public boolean hasSidebrushCurrent() {
-
-		sensors();
+	public String getWebviewAdvanced() {
 
-		return toBool(sensors.get("sidebrush_current"));
+		return full(StatusSection.WEBVIEW).webviewAdvanced();
 
 	}
+	
+	
+	// Utility Methods \\
+	/**
+	 * The current snapshot, after fetching the full status if the section is
+	 * missing or older than its {@link CachePolicy} allows.
+	 */
+	private StatusSnapshot full(final StatusSection section) {
 
-	public boolean detectsHomebase() {
+		noteRead(section);
+
+		final CachePolicy policy = cachePolicy(section);
+		final long age = age(published.get().snapshot, section);
 
-		sensors();
+		if (age < 0 || age > policy.maxAge()) {
+			statusUpdate(true);
+		}
 
-		return toBool(sensors.get("homebase_detected"));
+		return checked(published.get().snapshot, section, policy);
 
 	}
 
-	public boolean isNearHomebase() {
+	/**
+	 * The current snapshot, after fetching the simple status if there is none
+	 * yet or it is older than the {@link StatusSection#STATUS} policy allows.
+	 */
+	private StatusSnapshot latest() {
 
-		// If no information has been retrieved yet.
-		if (!useSimpleStatus && !useFullStatus) {
-			statusUpdate(false);
-		}
+		noteRead(StatusSection.STATUS);
 
-		boolean near_homebase = false;
+		final CachePolicy policy = cachePolicy(StatusSection.STATUS);
+		final long age = age(published.get().snapshot, StatusSection.STATUS);
 
-		if (useFullStatus) {
-			near_homebase = toBool(sensors.get("near_homebase"));
-		} else {
-			near_homebase = toBool(simpleStatus.get("near_homebase"));
+		if (age < 0 || age > policy.maxAge()) {
+			statusUpdate(false);
 		}
 
-		return near_homebase;
+		return checked(published.get().snapshot, StatusSection.STATUS, policy);
 
 	}
-	
+
 	/**
-	 * Access the infrared sensors on the Roomba.
-	 * @param IRLocation Can be omni, left, or right (o, l, r).
-	 * @return An integer representing the location relative to the sensor.
+	 * Remembers that a getter for the section was called, so that
+	 * {@link #statusUpdate()} fetches what it needs.
 	 */
-	public int getIRReadings(String IRLocation) {
+	private void noteRead(final StatusSection section) {
 
-		sensors();
+		final int bit = 1 << section.ordinal();
 
-		int IRReadings = 0;
+		setBit(reads, bit);
+		setBit(polledReads, bit);
 
-		IRLocation = IRLocation.toLowerCase();
+	}
 
-		switch (IRLocation) {
-		case "omni":
-		case "o":
-			IRReadings = toInt(sensors.get("IR_Omni"));
-			break;
+	private static void setBit(final AtomicInteger mask, final int bit) {
 
-		case "left":
-		case "l":
-			IRReadings = toInt(sensors.get("IR_Left"));
-			break;
+		int current = mask.get();
 
-		case "right":
-		case "r":
-			IRReadings = toInt(sensors.get("IR_Right"));
-			break;
+		// Most reads find the bit already set and write nothing.
+		while ((current & bit) == 0 && !mask.compareAndSet(current, current | bit)) {
+			current = mask.get();
 		}
 
-		return IRReadings;
-
 	}
 
-	public String getWebviewAdvanced() {
+	/**
+	 * Milliseconds since a section of the snapshot was fetched, or -1 if it
+	 * never has been. Either endpoint brings the {@link StatusSection#STATUS}
+	 * fields up to date, only the full status brings the others.
+	 */
+	private static long age(final StatusSnapshot status, final StatusSection section) {
 
-		if (webview == null) {
-			statusUpdate(true);
+		if (status == null) {
+			return -1;
 		}
 
-		return toStr(webview.get("advanced"));
+		return section == StatusSection.STATUS ? status.ageMillis() : status.fullAgeMillis();
 
 	}
-	
-	
-	// Utility Methods \\
+
 	/**
-	 * Fetches a JSON response from a URL
-	 * 
-	 * @return Website response as a JSON object.
+	 * Lets a snapshot through unless the section is missing from it, or too
+	 * old for a strict section.
 	 */
-	private JSONObject getJSON(final String url) {
+	private StatusSnapshot checked(final StatusSnapshot status, final StatusSection section, final CachePolicy policy) {
 
-		String rawData;
-		JSONObject JSONData = null;
+		final long age = age(status, section);
 
-		try {
-			rawData = IOUtils.toString(new URL(url));
-			JSONData = (JSONObject) JSONValue.parseWithException(rawData);
-		} catch (IOException | ParseException e) {
+		if (age < 0 || policy.isStrict() && age > policy.maxAge()) {
+			throw new StaleStatusException(ip, section, age);
 		}
 
-		return JSONData;
+		return status;
 
 	}
 
 	/**
-	 * Pass any single custom command along to the Robot programmatically.
-	 * 
-	 * @param command
-	 *            The command that is to be passed to the Thinking Cleaner web
-	 *            API.
+	 * Builds the JSON tree for one section of a response. Only the
+	 * JSONObject accessors need this, so the tree is made on first use.
 	 */
-	public void send(final String command) {
+	private static JSONObject section(final RawStatus raw, final String name) {
 
-		final String url = "http://" + ip + '/' + command;
-		try {
-			new URL(url).openConnection().getInputStream().close();
-			Thread.sleep(DELAY);
-		} catch (InterruptedException | IOException e1) {
+		if (raw == null) {
+			return null;
 		}
 
+		final Object value = raw.tree().get(name);
+
+		return value instanceof JSONObject ? (JSONObject) value : null;
+
 	}
 
 	/**
-	 * Pass a single custom command along to the Robot programmatically which
-	 * will then be repeated for a specified length of time.
-	 * 
-	 * @param command
-	 *            The command that is to be passed to the Thinking Cleaner web
-	 *            API.
-	 * @param duration
-	 *            The length of time in milliseconds that the command should be
-	 *            repeated.
+	 * Performs a request for which a permit has already been taken and tells
+	 * the pacer how it went.
 	 */
-	public void send(final String command, int duration) {
+	byte[] timedGet(final CommandClass commandClass, final String path) throws IOException {
 
-		// Do NOT use http://irobot2.local/, this has to go through Bonjour
-		// which
-		// is slower than frozen ****. Fu Steve Jobs, even if you are Magneto.
+		final long start = System.nanoTime();
+		boolean answered = false;
 
-		long endTime = DELAY + 50; // Rough estimate for the amount of time the
-		// operation will take
-		long startTime = System.currentTimeMillis();
+		try {
+			final byte[] body = transport.get(path);
+			answered = true;
+			pacer.onSuccess(commandClass, System.nanoTime() - start);
+			return body;
+		} finally {
+			if (!answered) {
+				pacer.onFailure(commandClass);
+			}
+		}
 
-		// This might overshoot any time you provide.
-		while (duration + startTime > endTime) {
+	}
 
-			send(command);
+	/**
+	 * Waits for the pacer to allow a request, then sends it.
+	 */
+	private void pacedSend(final String path) {
 
-			endTime = System.currentTimeMillis(); // Roughly startTime + DELAY +
-			// 50 at last calculation
-			duration -= endTime - startTime;
-			System.out.println("Time remaining: " + duration / 1000);
-			startTime = System.currentTimeMillis();
+		final CommandClass commandClass = CommandClass.of(path);
 
+		try {
+			pacer.acquire(commandClass);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
 		}
 
-		// Signal shutdown
 		try {
-			final String ceaseURL = "http://" + ip + "/command.json?command=drivestop";
-			new URL(ceaseURL).openConnection().getInputStream().close();
-			Thread.sleep(DELAY);
-		} catch (InterruptedException | IOException e) {
+			timedGet(commandClass, path);
+		} catch (final IOException e) {
 		}
 
 	}
 
+	Transport transport() {
+
+		return transport;
+
+	}
+
 	/**
-	 * Pass a command, specifically, along to the Robot.
+	 * What this Robot has fetched, and what it has saved by fetching less.
 	 */
-	public void generalSend(final String genericCommand) {
+	public RobotMetrics metrics() {
 
-		final String url = "http://" + ip + "/command.json?command=" + genericCommand;
+		return metrics;
 
-		try {
-			new URL(url).openConnection().getInputStream().close();
-			Thread.sleep(DELAY);
-		} catch (InterruptedException | IOException e) {
+	}
+
+	/**
+	 * The pacer that spaces out this Robot's requests. Use it to look at what
+	 * it has learned or to override the policy for a class of command.
+	 */
+	public AdaptivePacer pacer() {
+
+		return pacer;
+
+	}
+
+	/**
+	 * Returns a non-blocking view of this Robot which shares its connection
+	 * and its status data.
+	 */
+	public AsyncRobot async() {
+
+		AsyncRobot view = async;
+
+		if (view == null) {
+			synchronized (this) {
+				view = async;
+				if (view == null) {
+					view = new AsyncRobot(this);
+					async = view;
+				}
+			}
 		}
 
+		return view;
+
 	}
 
 	/**
-	 * Converts the "0" or "1" values returned by the JSON response objects into
-	 * false and true values, respectively.
+	 * Pass any single custom command along to the Robot programmatically.
 	 * 
-	 * @param binaryObject
-	 * @return The boolean representation of the object's binary String value.
+	 * @param command
+	 *            The command that is to be passed to the Thinking Cleaner web
+	 *            API.
 	 */
-	private boolean toBool(final Object binaryObject) {
+	public void send(final String command) {
 
-		return toStr(binaryObject).equals("0") ? false : true;
+		pacedSend('/' + command);
 
 	}
 
 	/**
-	 * Converts the String integer values returned by the JSON response objects
-	 * into integers.
+	 * Pass a single custom command along to the Robot programmatically which
+	 * will then be repeated for a specified length of time.
 	 * 
-	 * @param integerObject
-	 * @return The integer representation of the object's String integer value.
+	 * @param command
+	 *            The command that is to be passed to the Thinking Cleaner web
+	 *            API.
+	 * @param duration
+	 *            The length of time in milliseconds that the command should be
+	 *            repeated.
+	 * @see AsyncRobot#hold(String, long) to do this without blocking.
 	 */
-	private int toInt(final Object integerObject) {
+	public void send(final String command, final int duration) {
 
-		return Integer.parseInt(toStr(integerObject));
+		// Do NOT use http://irobot2.local/, this has to go through Bonjour
+		// which
+		// is slower than frozen ****. Fu Steve Jobs, even if you are Magneto.
+
+		final MotionHold hold = async().holdPath('/' + command, duration, MotionHold.DEFAULT_INTERVAL);
+
+		try {
+			hold.completion().get();
+		} catch (final InterruptedException e) {
+			// Still stop the Robot if the caller gives up early.
+			hold.cancel();
+			Thread.currentThread().interrupt();
+		} catch (final ExecutionException e) {
+		}
 
 	}
 
 	/**
-	 * Converts the object returned by the JSON response objects into a string.
-	 * </p>
-	 * This exists mostly to make it easier to modify the API in the future and
-	 * to fix possible bugs.
-	 * </p>
-	 * 
-	 * @param stringObject
-	 * @return The String representation of the object.
+	 * Pass a command, specifically, along to the Robot. <br>
+	 * Waits until this Robot's pacer lets the command go out.
 	 */
-	private String toStr(final Object stringObject) {
+	public void generalSend(final String genericCommand) {
 
-		return stringObject.toString();
+		pacedSend("/command.json?command=" + genericCommand);
 
 	}
 
@@ -1057,16 +1274,6 @@ public class Robot {
 	private void test(final int speed) {
 
 		int degree = 180;
-		final String command = "command.json?command=drive_only&degrees=" + degree + "&speed=" + speed;
-		final String ceaseURL = "http://" + ip + "/command.json?command=drivestop";
-		String commandURL = "http://" + ip + '/' + command;
-		URL obj = null;
-		URL stopObj = null;
-		try {
-			obj = new URL(commandURL);
-			stopObj = new URL(ceaseURL);
-		} catch (final MalformedURLException e4) {
-		}
 		long endTime = DELAY + 50; // Rough estimate for the amount of time the
 		// operation will take
 		final long startTime = System.nanoTime();
@@ -1083,13 +1290,8 @@ public class Robot {
 			degree += 10;
 			degree %= 360;
 			System.out.println(degree);
-			HttpURLConnection con;
-			commandURL = "http://" + ip + "/command.json?command=drive_only&degrees=" + degree + "&speed=100";
 			try {
-				obj = new URL(commandURL);
-				con = (HttpURLConnection) obj.openConnection();
-				con.connect();
-				con.getInputStream().close();
+				transport.get("/command.json?command=drive_only&degrees=" + degree + "&speed=" + speed);
 				Thread.sleep(DELAY);
 			} catch (InterruptedException | IOException e1) {
 			}
@@ -1101,12 +1303,8 @@ public class Robot {
 		}
 
 		// Signal shutdown
-		HttpURLConnection con;
 		try {
-			con = (HttpURLConnection) stopObj.openConnection();
-			con.connect();
-			con.disconnect();
-			con.getInputStream().close();
+			transport.get("/command.json?command=drivestop");
 		} catch (final IOException e1) {
 		}
 
@@ -1118,112 +1316,15 @@ public class Robot {
 	 */
 	public String readableCleanerState() {
 
-		final String state = cleanerState();
-		String translation;
-
-		switch (state) {
-		case "st_base":
-			translation = "At homebase.";
-			break;
-
-		case "st_base_recon":
-			translation = "At homebase, reconditioning charging.";
-			break;
-
-		case "st_base_full":
-			translation = "At homebase, charging.";
-			break;
-
-		case "st_base_trickle":
-			translation = "At homebase, trickle charging.";
-			break;
-
-		case "st_base_wait":
-			translation = "At homebase, waiting.";
-			break;
-
-		case "st_plug":
-			translation = "Plugged in.";
-			break;
-
-		case "st_plug_recon":
-			translation = "Plugged in, reconditioning charging.";
-			break;
-
-		case "st_plug_full":
-			translation = "Plugged in, charging.";
-			break;
-
-		case "st_plug_trickle":
-			translation = "Plugged in, trickle charging.";
-			break;
-
-		case "st_plug_wait":
-			translation = "Plugged in, waiting.";
-			break;
-
-		case "st_stopped":
-			translation = "Stopped.";
-			break;
-
-		case "st_clean":
-			translation = "Cleaning.";
-			break;
-
-		case "st_cleanstop":
-			translation = "Done cleaning.";
-			break;
-
-		case "st_clean_spot":
-			translation = "Cleaning spot.";
-			break;
-
-		case "st_clean_max":
-			translation = "Max cleaning.";
-			break;
-
-		case "st_delayed":
-			translation = "Delayed cleaning.";
-			break;
-
-		case "st_dock":
-			translation = "Docking.";
-			break;
-
-		case "st_pickup":
-			translation = "Picked up.";
-			break;
-
-		case "st_remote":
-			translation = "Being controlled.";
-			break;
-
-		case "st_wait":
-			translation = "Waiting.";
-			break;
-
-		case "st_off":
-			translation = "Turned off.";
-			break;
-
-		case "st_error":
-			translation = "Error";
-			break;
-
-		case "st_locate":
-			translation = "Locating.";
-			break;
-
-		case "st_unknown":
-			translation = "Unknown.";
-			break;
+		final StatusSnapshot snapshot = latest();
+		final CleanerState state = snapshot.cleanerState();
 
-		default:
-			translation = "NULL";
-			break;
+		// As before, a code without a translation reads as "NULL".
+		if (state == null || !state.code().equals(snapshot.cleanerStateCode())) {
+			return "NULL";
 		}
 
-		return translation;
+		return state.description();
 
 	}
 	
@@ -1242,6 +1343,8 @@ public class Robot {
 	 *            180 : forward <br>
 	 *            181 to 359 : left turn, the higher is more turn <br>
 	 *            360 : spinleft
+	 * @see AsyncRobot#drive(int, int) for control loops that steer faster
+	 *      than the device can take commands.
 	 */
 	public void drive(final int speed, final int degrees) {
 
@@ -1252,7 +1355,8 @@ public class Robot {
 
 	/**
 	 * Drive forwards for one second. <br>
-	 * Repeat every 0.5 seconds to drive continuously.
+	 * Repeat every 0.5 seconds to drive continuously, or use
+	 * {@link AsyncRobot#hold(String, long)} to have that done for you.
 	 */
 	public void forward() {
 
@@ -1616,15 +1720,75 @@ public class Robot {
 	 */
 	public static void startUp(final String ip) {
 
-		final String commandURL = "http://" + ip + "/status.json";
-
 		try {
-			final URL obj = new URL(commandURL);
-			obj.openConnection().getInputStream().close();
+			PooledHttpTransport.forAddress(ip).get("/status.json");
 			Thread.sleep(DELAY);
 		} catch (InterruptedException | IOException e) {
 		}
 
 	}
 
+	/**
+	 * The current snapshot and the bodies it was read from, published
+	 * together.
+	 */
+	private static final class Published {
+
+		static final Published NONE = new Published(null, null, null);
+
+		final StatusSnapshot snapshot;
+		/** The bodies behind the snapshot, for the JSONObject accessors. */
+		final RawStatus simpleBody;
+		final RawStatus fullBody;
+
+		private Published(final StatusSnapshot snapshot, final RawStatus simpleBody, final RawStatus fullBody) {
+
+			this.snapshot = snapshot;
+			this.simpleBody = simpleBody;
+			this.fullBody = fullBody;
+
+		}
+
+		Published with(final StatusSnapshot next, final RawStatus body) {
+
+			return next.isFull() ? new Published(next, simpleBody, body) : new Published(next, body, fullBody);
+
+		}
+
+	}
+
+	/**
+	 * A response body kept as it arrived, with its JSON tree built on demand.
+	 */
+	private static final class RawStatus {
+
+		private final byte[] body;
+		private volatile JSONObject tree = null;
+
+		RawStatus(final byte[] body) {
+
+			this.body = body;
+
+		}
+
+		JSONObject tree() {
+
+			JSONObject parsed = tree;
+
+			if (parsed == null) {
+				try {
+					parsed = (JSONObject) JSONValue.parseWithException(new String(body, StandardCharsets.UTF_8));
+				} catch (ParseException | ClassCastException e) {
+					// The snapshot was read from the same body, so this is rare.
+					parsed = new JSONObject();
+				}
+				tree = parsed;
+			}
+
+			return parsed;
+
+		}
+
+	}
+
 }
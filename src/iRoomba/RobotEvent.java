@@ -0,0 +1,287 @@
+package iRoomba;
+
+/**
+ * Something that changed on a Robot between two consecutive statuses.
+ * <p>
+ * Events are worked out by comparing each new snapshot with the one before
+ * it. The switches of both are compared in one step, so a status in which
+ * nothing happened costs next to nothing and produces no events. Sensors and
+ * buttons report their rising edge only: a bumper held down for several
+ * statuses is pressed once.
+ * </p>
+ */
+public abstract class RobotEvent {
+
+	private final Robot robot;
+	private final StatusSnapshot snapshot;
+
+	RobotEvent(final Robot robot, final StatusSnapshot snapshot) {
+
+		this.robot = robot;
+		this.snapshot = snapshot;
+
+	}
+
+	public Robot robot() {
+
+		return robot;
+
+	}
+
+	/** The status in which the change was seen. */
+	public StatusSnapshot snapshot() {
+
+		return snapshot;
+
+	}
+
+	// Events \\
+	public static final class StateChanged extends RobotEvent {
+
+		private final CleanerState from;
+		private final CleanerState to;
+
+		StateChanged(final Robot robot, final StatusSnapshot snapshot, final CleanerState from, final CleanerState to) {
+
+			super(robot, snapshot);
+			this.from = from;
+			this.to = to;
+
+		}
+
+		public CleanerState from() {
+
+			return from;
+
+		}
+
+		public CleanerState to() {
+
+			return to;
+
+		}
+
+		@Override
+		public String toString() {
+
+			return "StateChanged(" + from + " -> " + to + ')';
+
+		}
+
+	}
+
+	public static final class ButtonPressed extends RobotEvent {
+
+		private final Button button;
+
+		ButtonPressed(final Robot robot, final StatusSnapshot snapshot, final Button button) {
+
+			super(robot, snapshot);
+			this.button = button;
+
+		}
+
+		public Button button() {
+
+			return button;
+
+		}
+
+		@Override
+		public String toString() {
+
+			return "ButtonPressed(" + button + ')';
+
+		}
+
+	}
+
+	public static final class BumperPressed extends RobotEvent {
+
+		private final Bumper bumper;
+
+		BumperPressed(final Robot robot, final StatusSnapshot snapshot, final Bumper bumper) {
+
+			super(robot, snapshot);
+			this.bumper = bumper;
+
+		}
+
+		/** The side that was hit, or {@link Bumper#ANY} if it is not known. */
+		public Bumper bumper() {
+
+			return bumper;
+
+		}
+
+		@Override
+		public String toString() {
+
+			return "BumperPressed(" + bumper + ')';
+
+		}
+
+	}
+
+	public static final class WheelDropped extends RobotEvent {
+
+		private final Wheel wheel;
+
+		WheelDropped(final Robot robot, final StatusSnapshot snapshot, final Wheel wheel) {
+
+			super(robot, snapshot);
+			this.wheel = wheel;
+
+		}
+
+		public Wheel wheel() {
+
+			return wheel;
+
+		}
+
+		@Override
+		public String toString() {
+
+			return "WheelDropped(" + wheel + ')';
+
+		}
+
+	}
+
+	public static final class CliffDetected extends RobotEvent {
+
+		private final Cliff cliff;
+
+		CliffDetected(final Robot robot, final StatusSnapshot snapshot, final Cliff cliff) {
+
+			super(robot, snapshot);
+			this.cliff = cliff;
+
+		}
+
+		public Cliff cliff() {
+
+			return cliff;
+
+		}
+
+		@Override
+		public String toString() {
+
+			return "CliffDetected(" + cliff + ')';
+
+		}
+
+	}
+
+	/** The battery has run low. */
+	public static final class LowPower extends RobotEvent {
+
+		LowPower(final Robot robot, final StatusSnapshot snapshot) {
+
+			super(robot, snapshot);
+
+		}
+
+		@Override
+		public String toString() {
+
+			return "LowPower";
+
+		}
+
+	}
+
+	/** The bin should be emptied. */
+	public static final class BinFull extends RobotEvent {
+
+		BinFull(final Robot robot, final StatusSnapshot snapshot) {
+
+			super(robot, snapshot);
+
+		}
+
+		@Override
+		public String toString() {
+
+			return "BinFull";
+
+		}
+
+	}
+
+	// Diffing \\
+	/** The switches that produce events. */
+	private static final long WATCHED = StatusSnapshot.BUTTONS | StatusSnapshot.BUMPERS | StatusSnapshot.WHEEL_DROPS
+			| StatusSnapshot.CLIFFS | 1L << StatusSnapshot.LOW_POWER | 1L << StatusSnapshot.BIN_FULL;
+
+	private static final Button[] BUTTONS = { Button.CLEAN, Button.SPOT, Button.DOCK };
+	private static final Wheel[] WHEELS = { Wheel.LEFT, Wheel.RIGHT };
+	private static final Cliff[] CLIFFS = { Cliff.LEFT, Cliff.FRONT_LEFT, Cliff.FRONT_RIGHT, Cliff.RIGHT };
+
+	/**
+	 * Passes every change between two consecutive snapshots to the listener.
+	 */
+	static void diff(final Robot robot, final StatusSnapshot previous, final StatusSnapshot next,
+			final RobotEventListener listener) {
+
+		if (previous == null) {
+			return;
+		}
+
+		if (previous.cleanerState() != next.cleanerState() && next.cleanerState() != null) {
+			listener.onEvent(new StateChanged(robot, next, previous.cleanerState(), next.cleanerState()));
+		}
+
+		// Switches that went from off to on, among those both statuses know.
+		final long rising = ~previous.switches() & next.switches() & previous.knownSwitches() & next.knownSwitches()
+				& WATCHED;
+
+		if (rising == 0) {
+			return;
+		}
+
+		for (final Button button : BUTTONS) {
+			if ((rising & button.mask) != 0) {
+				listener.onEvent(new ButtonPressed(robot, next, button));
+			}
+		}
+
+		if ((rising & StatusSnapshot.BUMPERS) != 0) {
+			final boolean left = (rising & Bumper.LEFT.mask) != 0;
+			final boolean right = (rising & Bumper.RIGHT.mask) != 0;
+			if (left) {
+				listener.onEvent(new BumperPressed(robot, next, Bumper.LEFT));
+			}
+			if (right) {
+				listener.onEvent(new BumperPressed(robot, next, Bumper.RIGHT));
+			}
+			if (!left && !right && !next.any(Bumper.LEFT.mask | Bumper.RIGHT.mask)) {
+				listener.onEvent(new BumperPressed(robot, next, Bumper.ANY));
+			}
+		}
+
+		for (final Wheel wheel : WHEELS) {
+			if ((rising & wheel.mask) != 0) {
+				listener.onEvent(new WheelDropped(robot, next, wheel));
+			}
+		}
+
+		for (final Cliff cliff : CLIFFS) {
+			if ((rising & cliff.mask) != 0) {
+				listener.onEvent(new CliffDetected(robot, next, cliff));
+			}
+		}
+
+		if ((rising & 1L << StatusSnapshot.LOW_POWER) != 0) {
+			listener.onEvent(new LowPower(robot, next));
+		}
+
+		if ((rising & 1L << StatusSnapshot.BIN_FULL) != 0) {
+			listener.onEvent(new BinFull(robot, next));
+		}
+
+	}
+
+}
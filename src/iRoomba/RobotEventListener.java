@@ -0,0 +1,12 @@
+package iRoomba;
+
+/**
+ * Receives the changes a Robot notices between one status and the next.
+ *
+ * @see Robot#addListener(RobotEventListener)
+ */
+public interface RobotEventListener {
+
+	void onEvent(RobotEvent event);
+
+}
@@ -0,0 +1,140 @@
+package iRoomba;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads shared by every Robot in the JVM.
+ * <p>
+ * The timer only ever decides when something should happen and never
+ * blocks, so one thread is enough for any number of Robots. Anything that
+ * waits on the network is handed to the I/O pool.
+ * </p>
+ * <p>
+ * With {@link RobotThreads#PROPERTY} set on a runtime that has virtual
+ * threads, the I/O pool starts a virtual thread per task instead, since
+ * virtual threads are cheap to make and are not meant to be pooled. The timer
+ * stays a platform thread, as it never blocks.
+ * </p>
+ */
+final class RobotExecutors {
+
+	private static final ScheduledExecutorService scheduler = createScheduler();
+	private static final boolean virtualSupported = virtualFactory("iRoomba-probe") != null;
+	private static final boolean virtual = virtualSupported && Boolean.getBoolean(RobotThreads.PROPERTY);
+	private static final ExecutorService io = virtual ? threadPerTask(virtualThreads("iRoomba-io"))
+			: Executors.newCachedThreadPool(daemonThreads("iRoomba-io"));
+
+	private RobotExecutors() {
+	}
+
+	/** The single timer thread used for pacing and delays. */
+	static ScheduledExecutorService scheduler() {
+
+		return scheduler;
+
+	}
+
+	/** The pool that performs blocking requests to the devices. */
+	static ExecutorService io() {
+
+		return io;
+
+	}
+
+	/** Whether the runtime has virtual threads. */
+	static boolean virtualThreadsSupported() {
+
+		return virtualSupported;
+
+	}
+
+	/** Whether the I/O pool runs on virtual threads. */
+	static boolean virtual() {
+
+		return virtual;
+
+	}
+
+	private static ScheduledExecutorService createScheduler() {
+
+		final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, daemonThreads("iRoomba-timer"));
+		// Cancelled keep-alives and timeouts should not pile up in the queue.
+		timer.setRemoveOnCancelPolicy(true);
+
+		return timer;
+
+	}
+
+	static ThreadFactory daemonThreads(final String name) {
+
+		final AtomicInteger count = new AtomicInteger();
+
+		return new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+
+				final Thread thread = new Thread(runnable, name + '-' + count.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+
+			}
+
+		};
+
+	}
+
+	/**
+	 * A factory of virtual threads named after the given prefix. Falls back
+	 * to daemon platform threads if the runtime has no virtual threads.
+	 */
+	static ThreadFactory virtualThreads(final String name) {
+
+		final ThreadFactory factory = virtualFactory(name);
+
+		return factory == null ? daemonThreads(name) : factory;
+
+	}
+
+	/**
+	 * An executor starting a new thread from the factory for every task.
+	 * Executors.newThreadPerTaskExecutor is Java 21 as well, so it is reached
+	 * by reflection, with a cached pool of the same threads otherwise.
+	 */
+	static ExecutorService threadPerTask(final ThreadFactory factory) {
+
+		try {
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+					.invoke(null, factory);
+		} catch (final ReflectiveOperationException | RuntimeException e) {
+			return Executors.newCachedThreadPool(factory);
+		}
+
+	}
+
+	/**
+	 * Thread.ofVirtual().name(name + '-', 1).factory(), or null if the runtime
+	 * has no virtual threads. They arrived in Java 21 and this library is built
+	 * for Java 17, so they are reached by reflection.
+	 */
+	private static ThreadFactory virtualFactory(final String name) {
+
+		try {
+			final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			final Object named = Class.forName("java.lang.Thread$Builder$OfVirtual")
+					.getMethod("name", String.class, long.class).invoke(builder, name + '-', 1L);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(named);
+		} catch (final ReflectiveOperationException | RuntimeException e) {
+			// Not there, or still a preview feature that is not enabled.
+			return null;
+		}
+
+	}
+
+}
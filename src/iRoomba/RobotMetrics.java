@@ -0,0 +1,165 @@
+package iRoomba;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the status traffic of one Robot: how often each endpoint was
+ * fetched, how much it sent back, and how much was saved by choosing the
+ * smaller endpoint or by sharing a fetch already in progress.
+ * <p>
+ * Obtain one through {@link Robot#metrics()}. The counters are live and only
+ * ever grow.
+ * </p>
+ */
+public final class RobotMetrics {
+
+	private final AtomicLong[] fetches = counters();
+	private final AtomicLong[] bytes = counters();
+	private final AtomicLong[] chosen = counters();
+	private final AtomicLong[] polledChoices = counters();
+	private final AtomicLong sharedFetches = new AtomicLong();
+	private final AtomicLong bytesSaved = new AtomicLong();
+
+	/** The size of the last response of each kind, to estimate savings. */
+	private volatile int lastFullSize = 0;
+	private volatile int lastSimpleSize = 0;
+	private volatile StatusEndpoint lastChoice = null;
+	private volatile StatusEndpoint lastPolledChoice = null;
+
+	RobotMetrics() {
+	}
+
+	private static AtomicLong[] counters() {
+
+		final AtomicLong[] counters = new AtomicLong[StatusEndpoint.values().length];
+
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = new AtomicLong();
+		}
+
+		return counters;
+
+	}
+
+	// Recording \\
+	void onFetch(final StatusEndpoint endpoint, final int size) {
+
+		fetches[endpoint.ordinal()].incrementAndGet();
+		bytes[endpoint.ordinal()].addAndGet(size);
+
+		if (endpoint == StatusEndpoint.FULL) {
+			lastFullSize = size;
+		} else {
+			lastSimpleSize = size;
+		}
+
+	}
+
+	/**
+	 * @param polled
+	 *            Whether the choice was made for a background poll rather
+	 *            than for a statusUpdate() call.
+	 */
+	void onChoice(final StatusEndpoint endpoint, final boolean polled) {
+
+		if (polled) {
+			polledChoices[endpoint.ordinal()].incrementAndGet();
+			lastPolledChoice = endpoint;
+		} else {
+			chosen[endpoint.ordinal()].incrementAndGet();
+			lastChoice = endpoint;
+		}
+
+		if (endpoint == StatusEndpoint.SIMPLE) {
+			final int full = lastFullSize;
+			final int simple = lastSimpleSize;
+			if (simple > 0 && full > simple) {
+				bytesSaved.addAndGet(full - simple);
+			}
+		}
+
+	}
+
+	void onSharedFetch() {
+
+		sharedFetches.incrementAndGet();
+
+	}
+
+	// Reading \\
+	/** Requests made to an endpoint. */
+	public long fetches(final StatusEndpoint endpoint) {
+
+		return fetches[endpoint.ordinal()].get();
+
+	}
+
+	/** Bytes of response received from an endpoint. */
+	public long bytes(final StatusEndpoint endpoint) {
+
+		return bytes[endpoint.ordinal()].get();
+
+	}
+
+	/**
+	 * How often {@link Robot#statusUpdate()} chose an endpoint. Choices made
+	 * by the {@link StatusPoller} are counted by
+	 * {@link #polledChoices(StatusEndpoint)} instead.
+	 */
+	public long chosen(final StatusEndpoint endpoint) {
+
+		return chosen[endpoint.ordinal()].get();
+
+	}
+
+	/** The endpoint {@link Robot#statusUpdate()} chose last, or null. */
+	public StatusEndpoint lastChoice() {
+
+		return lastChoice;
+
+	}
+
+	/** How often the {@link StatusPoller} chose an endpoint for this Robot. */
+	public long polledChoices(final StatusEndpoint endpoint) {
+
+		return polledChoices[endpoint.ordinal()].get();
+
+	}
+
+	/** The endpoint the {@link StatusPoller} chose last, or null. */
+	public StatusEndpoint lastPolledChoice() {
+
+		return lastPolledChoice;
+
+	}
+
+	/**
+	 * Roughly how many bytes were not transferred because a simple status was
+	 * chosen instead of a full one, by either statusUpdate() or the poller.
+	 */
+	public long bytesSaved() {
+
+		return bytesSaved.get();
+
+	}
+
+	/** Callers that waited on another caller's fetch instead of making one. */
+	public long sharedFetches() {
+
+		return sharedFetches.get();
+
+	}
+
+	@Override
+	public String toString() {
+
+		return "full " + fetches(StatusEndpoint.FULL) + " (" + bytes(StatusEndpoint.FULL) + " B), simple "
+				+ fetches(StatusEndpoint.SIMPLE) + " (" + bytes(StatusEndpoint.SIMPLE) + " B), chose full "
+				+ chosen(StatusEndpoint.FULL) + " / simple " + chosen(StatusEndpoint.SIMPLE) + ", polled full "
+				+ polledChoices(StatusEndpoint.FULL) + " / simple " + polledChoices(StatusEndpoint.SIMPLE) + ", saved "
+				+ bytesSaved()
+				+ " B, shared " + sharedFetches();
+
+	}
+
+}
@@ -0,0 +1,82 @@
+package iRoomba;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs blocking Robot sessions on virtual threads where the runtime has
+ * them.
+ * <p>
+ * The blocking calls of {@link Robot} wait on sockets, on the pacer and in
+ * Thread.sleep, none of which happen inside a synchronized block, so a
+ * virtual thread waiting in them gives its carrier thread back. Thousands of
+ * sessions written in the plain blocking style can then share a few carrier
+ * threads.
+ * </p>
+ * <p>
+ * Virtual threads need Java 21. With {@value #PROPERTY} set to true on such
+ * a runtime, the library's own I/O pool uses them as well. On older runtimes
+ * everything here falls back to daemon platform threads and the setting is
+ * ignored.
+ * </p>
+ *
+ * <pre>
+ * ExecutorService sessions = RobotThreads.newSessionExecutor();
+ * for (Robot robot : Fleet.shared()) {
+ * 	sessions.execute(() -&gt; followWalls(robot));
+ * }
+ * </pre>
+ */
+public final class RobotThreads {
+
+	/**
+	 * The system property that puts the I/O pool on virtual threads. It is
+	 * read once, when the first Robot does any I/O.
+	 */
+	public static final String PROPERTY = "iRoomba.virtualThreads";
+
+	private RobotThreads() {
+	}
+
+	/** Whether this runtime has virtual threads. */
+	public static boolean isSupported() {
+
+		return RobotExecutors.virtualThreadsSupported();
+
+	}
+
+	/** Whether the library's own I/O runs on virtual threads. */
+	public static boolean isEnabled() {
+
+		return RobotExecutors.virtual();
+
+	}
+
+	/**
+	 * An executor that runs every task on a new virtual thread, or on a pool
+	 * of daemon platform threads if the runtime has none.
+	 */
+	public static ExecutorService newSessionExecutor() {
+
+		if (!isSupported()) {
+			return Executors.newCachedThreadPool(RobotExecutors.daemonThreads("iRoomba-session"));
+		}
+
+		return RobotExecutors.threadPerTask(RobotExecutors.virtualThreads("iRoomba-session"));
+
+	}
+
+	/**
+	 * Starts one session on a virtual thread, or on a daemon platform thread
+	 * if the runtime has none.
+	 */
+	public static Thread startSession(final String name, final Runnable session) {
+
+		final Thread thread = RobotExecutors.virtualThreads(name).newThread(session);
+		thread.start();
+
+		return thread;
+
+	}
+
+}
@@ -0,0 +1,167 @@
+package iRoomba;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread that drives the sockets of many {@link SelectorTransport}s from
+ * one Selector.
+ * <p>
+ * Everything a loop owns, including the state of the transports assigned to
+ * it, is only touched on its own thread. Other threads hand it work through
+ * {@link #execute(Runnable)}. Responses are read into one direct buffer per
+ * loop, and only the decoded body is copied out, so an open connection costs
+ * a socket and a decoder rather than a thread and a stream.
+ * </p>
+ */
+final class SelectorLoop implements Runnable {
+
+	/** Bytes read from a socket at a time. */
+	private static final int READ_BUFFER_SIZE = 16384;
+	/** Nanoseconds between checks of the deadlines, while any are set. */
+	private static final long SWEEP_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private static final SelectorLoop[] loops = new SelectorLoop[Math.max(1,
+			Math.min(4, Runtime.getRuntime().availableProcessors() / 2))];
+	private static final AtomicInteger nextLoop = new AtomicInteger();
+
+	private final Selector selector;
+	private final Thread thread;
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+	/** Every open connection, for the deadline checks. */
+	private final Set<SelectorTransport.Connection> connections = new HashSet<SelectorTransport.Connection>();
+	private long nextSweep = 0;
+
+	private SelectorLoop(final String name) throws IOException {
+
+		selector = Selector.open();
+		thread = RobotExecutors.daemonThreads(name).newThread(this);
+		thread.start();
+
+	}
+
+	/**
+	 * The next of the shared loops, handed out in turn so the transports are
+	 * spread evenly across them. There are up to four, one for every two
+	 * processors.
+	 */
+	static SelectorLoop next() throws IOException {
+
+		final int index = Math.floorMod(nextLoop.getAndIncrement(), loops.length);
+
+		synchronized (loops) {
+			if (loops[index] == null) {
+				loops[index] = new SelectorLoop("iRoomba-selector-" + index);
+			}
+			return loops[index];
+		}
+
+	}
+
+	/** Runs a task on the loop's thread. */
+	void execute(final Runnable task) {
+
+		tasks.add(task);
+		selector.wakeup();
+
+	}
+
+	boolean inLoop() {
+
+		return Thread.currentThread() == thread;
+
+	}
+
+	Selector selector() {
+
+		return selector;
+
+	}
+
+	/** The loop's read buffer, cleared, for use on the loop's thread only. */
+	ByteBuffer readBuffer() {
+
+		readBuffer.clear();
+
+		return readBuffer;
+
+	}
+
+	void opened(final SelectorTransport.Connection connection) {
+
+		connections.add(connection);
+
+	}
+
+	void closed(final SelectorTransport.Connection connection) {
+
+		connections.remove(connection);
+
+	}
+
+	@Override
+	public void run() {
+
+		while (true) {
+			try {
+				select();
+			} catch (final IOException | RuntimeException e) {
+				// A bad key or task must not take every other connection down
+				// with it.
+			}
+		}
+
+	}
+
+	private void select() throws IOException {
+
+		final long wait = connections.isEmpty() ? 0 : TimeUnit.NANOSECONDS.toMillis(SWEEP_INTERVAL);
+
+		selector.select(wait);
+
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+
+		final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+		while (keys.hasNext()) {
+			final SelectionKey key = keys.next();
+			keys.remove();
+			final SelectorTransport.Connection connection = (SelectorTransport.Connection) key.attachment();
+			try {
+				connection.ready(key.readyOps());
+			} catch (final CancelledKeyException e) {
+				connection.fail(new IOException("Connection closed", e));
+			}
+		}
+
+		final long now = System.nanoTime();
+		if (!connections.isEmpty() && now - nextSweep >= 0) {
+			nextSweep = now + SWEEP_INTERVAL;
+			final List<SelectorTransport.Connection> due = new ArrayList<SelectorTransport.Connection>();
+			for (final SelectorTransport.Connection connection : connections) {
+				if (connection.isDue(now)) {
+					due.add(connection);
+				}
+			}
+			for (final SelectorTransport.Connection connection : due) {
+				connection.expire();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,635 @@
+package iRoomba;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Transport whose keep-alive connections are driven by a few shared
+ * selector threads instead of by the threads making the requests.
+ * <p>
+ * Meant for fleets of thousands of devices, where a blocked thread and a
+ * stream per connection add up. Requests for the status endpoints and for
+ * plain commands are encoded once into direct buffers and written from
+ * there, and responses are read into a direct buffer shared by every
+ * connection on the same selector thread. {@link #getAsync(String)} waits on
+ * no thread at all; {@link #get(String)} blocks its caller only, which is
+ * cheap on a virtual thread (see {@link RobotThreads}).
+ * </p>
+ * <p>
+ * As with {@link PooledHttpTransport}, the pool size is the number of
+ * requests which may be outstanding to the device at once; further requests
+ * queue up in the order they were made.
+ * </p>
+ */
+public class SelectorTransport implements Transport {
+
+	/** Connections kept per device unless told otherwise. */
+	public static final int DEFAULT_POOL_SIZE = 2;
+
+	/** Commands without parameters whose requests are encoded up front. */
+	private static final int MAX_ENCODED = 64;
+
+	/** Transports shared by every Robot talking to the same address. */
+	private static final ConcurrentHashMap<String, SelectorTransport> shared = new ConcurrentHashMap<String, SelectorTransport>();
+
+	private final String key;
+	private final DeviceAddress address;
+	private final int poolSize;
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final int idleTimeout;
+	private final SelectorLoop loop;
+
+	/** Read-only direct buffers holding whole requests, by path. */
+	private final ConcurrentHashMap<String, ByteBuffer> encoded = new ConcurrentHashMap<String, ByteBuffer>();
+	private volatile InetSocketAddress remote;
+	private volatile boolean closed = false;
+
+	/** Only touched on the loop's thread. */
+	private final ArrayDeque<Exchange> waiting = new ArrayDeque<Exchange>();
+	private final ArrayDeque<Connection> idle = new ArrayDeque<Connection>();
+	private int open = 0;
+
+	private final AtomicLong connectionsOpened = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+
+	public SelectorTransport(final String ipAddress) throws IOException {
+
+		this(ipAddress, DEFAULT_POOL_SIZE);
+
+	}
+
+	public SelectorTransport(final String ipAddress, final int poolSize) throws IOException {
+
+		this(ipAddress, poolSize, PooledHttpTransport.DEFAULT_CONNECT_TIMEOUT,
+				PooledHttpTransport.DEFAULT_READ_TIMEOUT, PooledHttpTransport.DEFAULT_IDLE_TIMEOUT);
+
+	}
+
+	/**
+	 * @param ipAddress
+	 *            The address of the device, optionally with a port.
+	 * @param poolSize
+	 *            The most connections that are opened to the device at once.
+	 * @param connectTimeout
+	 *            Milliseconds to wait for a connection to be accepted.
+	 * @param readTimeout
+	 *            Milliseconds to wait for a response.
+	 * @param idleTimeout
+	 *            Milliseconds an idle connection is kept for reuse.
+	 * @throws IOException
+	 *             If no selector could be opened.
+	 */
+	public SelectorTransport(final String ipAddress, final int poolSize, final int connectTimeout,
+			final int readTimeout, final int idleTimeout) throws IOException {
+
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("poolSize must be at least 1");
+		}
+
+		this.key = ipAddress;
+		this.address = DeviceAddress.parse(ipAddress);
+		this.poolSize = poolSize;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.idleTimeout = idleTimeout;
+		this.remote = new InetSocketAddress(address.host, address.port);
+		this.loop = SelectorLoop.next();
+
+		for (final StatusEndpoint endpoint : StatusEndpoint.values()) {
+			request(endpoint.path());
+		}
+
+	}
+
+	/**
+	 * Returns the Transport shared by everything that talks to the given
+	 * address, creating it the first time it is asked for.
+	 *
+	 * @throws IOException
+	 *             If no selector could be opened.
+	 */
+	public static SelectorTransport forAddress(final String ipAddress) throws IOException {
+
+		SelectorTransport transport = shared.get(ipAddress);
+
+		while (transport == null || transport.closed) {
+			if (transport != null) {
+				shared.remove(ipAddress, transport);
+			}
+			final SelectorTransport created = new SelectorTransport(ipAddress);
+			transport = shared.putIfAbsent(ipAddress, created);
+			if (transport == null) {
+				transport = created;
+			}
+		}
+
+		return transport;
+
+	}
+
+	/**
+	 * Waits for {@link #getAsync(String)}.
+	 */
+	@Override
+	public byte[] get(final String path) throws IOException {
+
+		final CompletableFuture<byte[]> response = getAsync(path);
+
+		try {
+			return response.get();
+		} catch (final InterruptedException e) {
+			response.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + key);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+
+	}
+
+	/**
+	 * Performs a GET request against the device without waiting for it.
+	 * <p>
+	 * The future is completed on a selector thread, so anything chained to it
+	 * that blocks or takes long should use the async variants of
+	 * CompletableFuture.
+	 * </p>
+	 *
+	 * @return Completes with the body of the response, or with an IOException
+	 *         if the device could not be reached or answered with an error
+	 *         status.
+	 */
+	public CompletableFuture<byte[]> getAsync(final String path) {
+
+		final Exchange exchange = new Exchange(path);
+
+		if (closed) {
+			exchange.future.completeExceptionally(new IOException("Transport to " + key + " is closed"));
+			return exchange.future;
+		}
+
+		if (remote.isUnresolved()) {
+			// Looked up again here so that the selector thread never waits on
+			// a name server.
+			remote = new InetSocketAddress(address.host, address.port);
+			if (remote.isUnresolved()) {
+				exchange.future.completeExceptionally(new UnknownHostException(address.host));
+				return exchange.future;
+			}
+		}
+
+		exchange.request = request(path);
+		requests.incrementAndGet();
+
+		loop.execute(new Runnable() {
+
+			@Override
+			public void run() {
+
+				submit(exchange);
+
+			}
+
+		});
+
+		return exchange.future;
+
+	}
+
+	/** The number of sockets this Transport has connected so far. */
+	public long connectionsOpened() {
+
+		return connectionsOpened.get();
+
+	}
+
+	/** The number of requests this Transport has carried so far. */
+	public long requests() {
+
+		return requests.get();
+
+	}
+
+	public int poolSize() {
+
+		return poolSize;
+
+	}
+
+	@Override
+	public void close() {
+
+		closed = true;
+		shared.remove(key, this);
+
+		loop.execute(new Runnable() {
+
+			@Override
+			public void run() {
+
+				Exchange exchange;
+				while ((exchange = waiting.poll()) != null) {
+					exchange.future.completeExceptionally(new IOException("Transport to " + key + " is closed"));
+				}
+
+				Connection connection;
+				while ((connection = idle.poll()) != null) {
+					connection.close();
+				}
+
+				// Connections still busy are closed once they are answered.
+
+			}
+
+		});
+
+	}
+
+	/**
+	 * The bytes of a request, from the ones encoded up front if there are
+	 * any. Commands with parameters, such as drive_only, vary too much to be
+	 * worth keeping.
+	 */
+	private ByteBuffer request(final String path) {
+
+		final ByteBuffer known = encoded.get(path);
+
+		if (known != null) {
+			return known.duplicate();
+		}
+
+		final byte[] bytes = address.encodeGet(path);
+
+		if (!isFixed(path) || encoded.size() >= MAX_ENCODED) {
+			return ByteBuffer.wrap(bytes);
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes).flip();
+		encoded.putIfAbsent(path, buffer.asReadOnlyBuffer());
+
+		return buffer;
+
+	}
+
+	private static boolean isFixed(final String path) {
+
+		if (path.startsWith("/command.json?command=")) {
+			return path.indexOf('&') < 0;
+		}
+
+		return path.equals(StatusEndpoint.SIMPLE.path()) || path.equals(StatusEndpoint.FULL.path());
+
+	}
+
+	// Loop Thread \\
+	private void submit(final Exchange exchange) {
+
+		if (closed) {
+			exchange.future.completeExceptionally(new IOException("Transport to " + key + " is closed"));
+			return;
+		}
+
+		waiting.addLast(exchange);
+		pump();
+
+	}
+
+	/**
+	 * Hands waiting requests to idle connections, and connects more while the
+	 * pool allows.
+	 */
+	private void pump() {
+
+		while (!waiting.isEmpty()) {
+			final Exchange exchange = waiting.peekFirst();
+
+			if (exchange.future.isDone()) {
+				// Cancelled while it waited.
+				waiting.pollFirst();
+				continue;
+			}
+
+			final Connection connection = takeIdle();
+			if (connection != null) {
+				connection.start(waiting.pollFirst());
+			} else if (open < poolSize) {
+				connect(waiting.pollFirst());
+			} else {
+				return;
+			}
+		}
+
+	}
+
+	private Connection takeIdle() {
+
+		final long now = System.nanoTime();
+		Connection connection;
+
+		while ((connection = idle.pollLast()) != null) {
+			if ((now - connection.lastUsed) / 1000000L > idleTimeout) {
+				connection.close();
+			} else {
+				return connection;
+			}
+		}
+
+		return null;
+
+	}
+
+	private void connect(final Exchange exchange) {
+
+		SocketChannel channel = null;
+		Connection connection = null;
+
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+			channel.setOption(StandardSocketOptions.SO_KEEPALIVE, Boolean.TRUE);
+
+			connection = new Connection(channel);
+			connectionsOpened.incrementAndGet();
+
+			if (channel.connect(remote)) {
+				connection.start(exchange);
+			} else {
+				connection.exchange = exchange;
+				connection.deadline = System.nanoTime() + connectTimeout * 1000000L;
+				connection.selectionKey.interestOps(SelectionKey.OP_CONNECT);
+			}
+		} catch (final IOException e) {
+			if (connection != null) {
+				connection.close();
+			} else if (channel != null) {
+				try {
+					channel.close();
+				} catch (final IOException ignored) {
+				}
+			}
+			exchange.future.completeExceptionally(e);
+		}
+
+	}
+
+	/**
+	 * A request on its way to the device and the future it answers.
+	 */
+	private static final class Exchange {
+
+		final String path;
+		final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+		ByteBuffer request;
+		/** Whether it was already sent again after a stale connection failed. */
+		boolean retried = false;
+
+		Exchange(final String path) {
+
+			this.path = path;
+
+		}
+
+	}
+
+	/**
+	 * One socket to the device, only touched on the loop's thread.
+	 */
+	final class Connection {
+
+		private final SocketChannel channel;
+		private final SelectionKey selectionKey;
+		private final HttpResponseDecoder decoder = new HttpResponseDecoder();
+		/** The request being sent or answered, or null while idle. */
+		Exchange exchange = null;
+		/** Whether it was taken from the idle pool for the current request. */
+		private boolean reused = false;
+		long deadline;
+		long lastUsed = System.nanoTime();
+		private boolean connected = false;
+		private boolean closed = false;
+
+		Connection(final SocketChannel channel) throws IOException {
+
+			this.channel = channel;
+			this.selectionKey = channel.register(loop.selector(), 0, this);
+			open++;
+			loop.opened(this);
+
+		}
+
+		/** Starts sending a request. */
+		void start(final Exchange next) {
+
+			reused = connected;
+			connected = true;
+			exchange = next;
+			decoder.reset();
+			deadline = System.nanoTime() + readTimeout * 1000000L;
+			selectionKey.interestOps(SelectionKey.OP_WRITE);
+
+			write();
+
+		}
+
+		void ready(final int ops) {
+
+			if ((ops & SelectionKey.OP_CONNECT) != 0) {
+				try {
+					channel.finishConnect();
+				} catch (final IOException e) {
+					fail(e);
+					return;
+				}
+				start(exchange);
+			} else {
+				if ((ops & SelectionKey.OP_WRITE) != 0) {
+					write();
+				}
+				if (!closed && (ops & SelectionKey.OP_READ) != 0) {
+					read();
+				}
+			}
+
+		}
+
+		private void write() {
+
+			try {
+				channel.write(exchange.request);
+			} catch (final IOException e) {
+				fail(e);
+				return;
+			}
+
+			if (!exchange.request.hasRemaining()) {
+				selectionKey.interestOps(SelectionKey.OP_READ);
+			}
+
+		}
+
+		private void read() {
+
+			final ByteBuffer buffer = loop.readBuffer();
+
+			try {
+				while (true) {
+					final int read = channel.read(buffer);
+
+					if (read == 0) {
+						return;
+					}
+
+					if (read < 0) {
+						if (exchange != null && decoder.endOfStream()) {
+							finish(false);
+						} else {
+							fail(new EOFException("Connection to " + key + " closed mid-response"));
+						}
+						return;
+					}
+
+					buffer.flip();
+
+					if (exchange == null) {
+						// Nothing was asked for, so the socket cannot be
+						// trusted for the next request.
+						close();
+						return;
+					}
+
+					if (decoder.feed(buffer)) {
+						finish(decoder.keepAlive() && !buffer.hasRemaining());
+						return;
+					}
+
+					buffer.clear();
+				}
+			} catch (final IOException e) {
+				fail(e);
+			}
+
+		}
+
+		/** Hands the response over and puts the connection back in the pool. */
+		private void finish(final boolean reusable) {
+
+			final Exchange done = exchange;
+			exchange = null;
+
+			if (reusable && !SelectorTransport.this.closed) {
+				lastUsed = System.nanoTime();
+				// Watched while idle so a socket the device drops is noticed.
+				selectionKey.interestOps(SelectionKey.OP_READ);
+				idle.addLast(this);
+			} else {
+				close();
+			}
+
+			if (decoder.status() >= 400) {
+				done.future.completeExceptionally(new IOException("HTTP " + decoder.status() + " from " + key));
+			} else {
+				done.future.complete(decoder.body());
+			}
+
+			pump();
+
+		}
+
+		/**
+		 * Closes the connection and fails its request.
+		 * <p>
+		 * The device may have dropped a pooled socket while it was idle, so a
+		 * request that failed on one is sent once more on a fresh one if that
+		 * is safe: if it was never written whole, or if it is a status fetch
+		 * that has no answer yet. A command that was written may have been
+		 * carried out already.
+		 * </p>
+		 */
+		void fail(final IOException error) {
+
+			final Exchange failed = exchange;
+			exchange = null;
+			close();
+
+			if (failed != null) {
+				final boolean unsent = failed.request.hasRemaining();
+				final boolean unanswered = !decoder.isStarted() && PooledHttpTransport.isIdempotent(failed.path);
+				if (reused && !failed.retried && (unsent || unanswered)) {
+					failed.retried = true;
+					failed.request.rewind();
+					waiting.addFirst(failed);
+				} else {
+					failed.future.completeExceptionally(error);
+				}
+			}
+
+			pump();
+
+		}
+
+		boolean isDue(final long now) {
+
+			if (exchange == null) {
+				return (now - lastUsed) / 1000000L > idleTimeout;
+			}
+
+			return now - deadline > 0;
+
+		}
+
+		void expire() {
+
+			if (exchange == null) {
+				close();
+			} else if (exchange.future.isCancelled()) {
+				fail(new InterruptedIOException("Request to " + key + " cancelled"));
+			} else {
+				// Not worth sending again: the device is there but slow.
+				reused = false;
+				fail(new SocketTimeoutException((connected ? "Read" : "Connect") + " timed out for " + key));
+			}
+
+		}
+
+		void close() {
+
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+			open--;
+			idle.remove(this);
+			loop.closed(this);
+			selectionKey.cancel();
+
+			try {
+				channel.close();
+			} catch (final IOException e) {
+			}
+
+		}
+
+	}
+
+}
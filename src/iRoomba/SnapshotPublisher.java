@@ -0,0 +1,331 @@
+package iRoomba;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the statuses of one or more Robots to {@link Flow.Subscriber
+ * subscribers} that each take them at their own pace.
+ * <p>
+ * The Robots are polled with the {@link StatusPoller#shared() shared poller}
+ * while anyone is subscribed. Each subscriber has its own queue, kept
+ * according to the {@link OverflowPolicy}, and is called on a thread of its
+ * own from the I/O pool. A subscriber that is slow or stuck therefore never
+ * holds up the poller or any other subscriber; it only falls behind.
+ * </p>
+ * <p>
+ * When several Robots are published, {@link StatusSnapshot#ip()} tells
+ * which one a snapshot came from: the address the Robot was created with.
+ * The device name in a snapshot may be missing or shared by several Robots.
+ * </p>
+ */
+public final class SnapshotPublisher implements Flow.Publisher<StatusSnapshot> {
+
+	private final List<Robot> robots;
+	private final OverflowPolicy policy;
+	private final int capacity;
+	private final StatusPoller poller;
+	private final Executor executor;
+
+	private final CopyOnWriteArrayList<Sink> sinks = new CopyOnWriteArrayList<Sink>();
+	/** Guarded by this. */
+	private final List<Subscription> polling = new ArrayList<Subscription>();
+	private boolean closed = false;
+
+	private final StatusListener listener = new StatusListener() {
+
+		@Override
+		public void onStatus(final Robot robot, final StatusSnapshot snapshot) {
+
+			if (snapshot == null) {
+				return;
+			}
+
+			for (final Sink sink : sinks) {
+				sink.offer(snapshot);
+			}
+
+		}
+
+	};
+
+	/**
+	 * @param capacity
+	 *            How many snapshots each subscriber may fall behind by. Ignored
+	 *            for {@link OverflowPolicy#LATEST}, which keeps one.
+	 */
+	public SnapshotPublisher(final Collection<Robot> robots, final OverflowPolicy policy, final int capacity) {
+
+		this(robots, policy, capacity, StatusPoller.shared(), RobotExecutors.io());
+
+	}
+
+	SnapshotPublisher(final Collection<Robot> robots, final OverflowPolicy policy, final int capacity,
+			final StatusPoller poller, final Executor executor) {
+
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+
+		this.robots = new ArrayList<Robot>(robots);
+		this.policy = policy;
+		this.capacity = policy == OverflowPolicy.LATEST ? 1 : capacity;
+		this.poller = poller;
+		this.executor = executor;
+
+	}
+
+	public static SnapshotPublisher of(final OverflowPolicy policy, final int capacity, final Robot... robots) {
+
+		return new SnapshotPublisher(Arrays.asList(robots), policy, capacity);
+
+	}
+
+	public OverflowPolicy policy() {
+
+		return policy;
+
+	}
+
+	public int capacity() {
+
+		return capacity;
+
+	}
+
+	/** The number of subscribers still receiving snapshots. */
+	public int subscribers() {
+
+		return sinks.size();
+
+	}
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super StatusSnapshot> subscriber) {
+
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+
+		final Sink sink = new Sink(subscriber);
+		subscriber.onSubscribe(sink);
+
+		synchronized (this) {
+			if (closed) {
+				sink.complete();
+				return;
+			}
+			sinks.add(sink);
+			if (polling.isEmpty()) {
+				for (final Robot robot : robots) {
+					polling.add(poller.subscribe(robot, listener));
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Stops polling and completes every subscriber once it has taken what is
+	 * already queued for it.
+	 */
+	public void close() {
+
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			stopPolling();
+		}
+
+		for (final Sink sink : sinks) {
+			sink.complete();
+		}
+
+	}
+
+	private void remove(final Sink sink) {
+
+		synchronized (this) {
+			if (sinks.remove(sink) && sinks.isEmpty()) {
+				stopPolling();
+			}
+		}
+
+	}
+
+	/** Must hold the lock on this. */
+	private void stopPolling() {
+
+		for (final Subscription subscription : polling) {
+			subscription.cancel();
+		}
+		polling.clear();
+
+	}
+
+	/**
+	 * One subscriber's queue and demand. Snapshots are handed over by a drain
+	 * loop that only ever runs on one thread at a time, so the subscriber is
+	 * never called concurrently.
+	 */
+	private final class Sink implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super StatusSnapshot> subscriber;
+		/** Drain requests not yet handled; the loop runs while this is above 0. */
+		private final AtomicInteger pending = new AtomicInteger();
+
+		/** Guarded by this. */
+		private final ArrayDeque<StatusSnapshot> queue = new ArrayDeque<StatusSnapshot>();
+		private long demand = 0;
+		private boolean done = false;
+		private boolean completing = false;
+		private Throwable error = null;
+
+		Sink(final Flow.Subscriber<? super StatusSnapshot> subscriber) {
+
+			this.subscriber = subscriber;
+
+		}
+
+		void offer(final StatusSnapshot snapshot) {
+
+			synchronized (this) {
+				if (done || completing || error != null) {
+					return;
+				}
+				if (queue.size() >= capacity) {
+					if (policy == OverflowPolicy.BUFFER) {
+						error = new StatusOverflowException(capacity);
+						queue.clear();
+					} else {
+						queue.poll();
+						queue.add(snapshot);
+					}
+				} else {
+					queue.add(snapshot);
+				}
+			}
+
+			drain();
+
+		}
+
+		void complete() {
+
+			synchronized (this) {
+				completing = true;
+			}
+
+			drain();
+
+		}
+
+		@Override
+		public void request(final long n) {
+
+			synchronized (this) {
+				if (done) {
+					return;
+				}
+				if (n <= 0) {
+					// As the reactive streams rules ask.
+					error = new IllegalArgumentException("Requested " + n + " snapshots");
+					queue.clear();
+				} else {
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+				}
+			}
+
+			drain();
+
+		}
+
+		@Override
+		public void cancel() {
+
+			synchronized (this) {
+				done = true;
+				queue.clear();
+			}
+
+			remove(this);
+
+		}
+
+		private void drain() {
+
+			if (pending.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+
+		}
+
+		@Override
+		public void run() {
+
+			int missed = 1;
+
+			do {
+				while (true) {
+					final StatusSnapshot next;
+					Throwable failure = null;
+					boolean finished = false;
+
+					synchronized (this) {
+						if (done) {
+							return;
+						}
+						if (error != null) {
+							failure = error;
+						} else if (completing && queue.isEmpty()) {
+							finished = true;
+						}
+						if (failure != null || finished) {
+							done = true;
+							next = null;
+						} else if (demand == 0 || queue.isEmpty()) {
+							break;
+						} else {
+							next = queue.poll();
+							if (demand != Long.MAX_VALUE) {
+								demand--;
+							}
+						}
+					}
+
+					if (failure != null || finished) {
+						remove(this);
+						if (failure != null) {
+							subscriber.onError(failure);
+						} else {
+							subscriber.onComplete();
+						}
+						return;
+					}
+
+					try {
+						subscriber.onNext(next);
+					} catch (final RuntimeException e) {
+						// A subscriber that throws is treated as gone.
+						cancel();
+						return;
+					}
+				}
+
+				missed = pending.addAndGet(-missed);
+			} while (missed != 0);
+
+		}
+
+	}
+
+}
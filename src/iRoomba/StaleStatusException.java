@@ -0,0 +1,40 @@
+package iRoomba;
+
+/**
+ * Thrown by a getter when the Robot could not fetch its status and what it
+ * still has is too old, or it has nothing at all.
+ *
+ * @see CachePolicy
+ */
+public class StaleStatusException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final StatusSection section;
+	private final long age;
+
+	public StaleStatusException(final String ip, final StatusSection section, final long age) {
+
+		super(age < 0 ? "No " + section + " data from " + ip
+				: section + " data from " + ip + " is " + age + " ms old");
+		this.section = section;
+		this.age = age;
+
+	}
+
+	public StatusSection section() {
+
+		return section;
+
+	}
+
+	/**
+	 * Milliseconds since the data was fetched, or -1 if there is none.
+	 */
+	public long age() {
+
+		return age;
+
+	}
+
+}
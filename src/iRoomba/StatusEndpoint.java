@@ -0,0 +1,27 @@
+package iRoomba;
+
+/**
+ * The two places a Thinking Cleaner reports its status.
+ */
+public enum StatusEndpoint {
+
+	/** status.json: state, charge and a few flags, in about 250 bytes. */
+	SIMPLE("/status.json"),
+	/** full_status.json: every section, in about 1.5 kilobytes. */
+	FULL("/full_status.json");
+
+	private final String path;
+
+	private StatusEndpoint(final String path) {
+
+		this.path = path;
+
+	}
+
+	public String path() {
+
+		return path;
+
+	}
+
+}
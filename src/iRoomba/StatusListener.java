@@ -0,0 +1,14 @@
+package iRoomba;
+
+/**
+ * Receives every status a {@link StatusPoller} fetches for a Robot.
+ * <p>
+ * Listeners are called on the thread that finished the fetch, so they should
+ * return quickly and hand any slow work elsewhere.
+ * </p>
+ */
+public interface StatusListener {
+
+	void onStatus(Robot robot, StatusSnapshot snapshot);
+
+}
@@ -0,0 +1,26 @@
+package iRoomba;
+
+/**
+ * Passed to a subscriber of a {@link SnapshotPublisher} using
+ * {@link OverflowPolicy#BUFFER} when it falls too far behind.
+ */
+public class StatusOverflowException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int capacity;
+
+	public StatusOverflowException(final int capacity) {
+
+		super("Subscriber fell more than " + capacity + " snapshots behind");
+		this.capacity = capacity;
+
+	}
+
+	public int capacity() {
+
+		return capacity;
+
+	}
+
+}
@@ -0,0 +1,602 @@
+package iRoomba;
+
+import java.io.IOException;
+
+/**
+ * Reads status.json and full_status.json responses straight into a
+ * {@link StatusSnapshot}, without building a JSON tree first.
+ * <p>
+ * The body is read once from start to end. Fields the API knows about are
+ * decoded into their typed slot, everything else is skipped. The buffers are
+ * kept between responses, and a text field that has not changed since the
+ * last response reuses the String made for it then. A parser is meant to be
+ * used by one thread at a time.
+ * </p>
+ */
+final class StatusParser {
+
+	// Kinds of field \\
+	private static final int TEXT = 1 << 8;
+	private static final int NUMBER = 2 << 8;
+	private static final int SWITCH = 3 << 8;
+	private static final int STATE = 4 << 8;
+	/** The value names a section of fields rather than a single field. */
+	private static final int SECTION = 5 << 8;
+	private static final int KIND = 0xff00;
+	private static final int INDEX = 0xff;
+
+	private static final Fields STATUS = new Fields(new Object[] {
+			"name", TEXT | StatusSnapshot.NAME,
+			"battery_charge", NUMBER | StatusSnapshot.BATTERY_CHARGE,
+			"capacity", NUMBER | StatusSnapshot.CAPACITY,
+			"cleaner_state", STATE,
+			"cleaning", SWITCH | StatusSnapshot.CLEANING,
+			"schedule_serial_number", NUMBER | StatusSnapshot.SCHEDULE_SERIAL_NUMBER,
+			"charge", NUMBER | StatusSnapshot.CHARGE,
+			"near_homebase", SWITCH | StatusSnapshot.NEAR_HOMEBASE });
+
+	private static final Fields FIRMWARE = new Fields(new Object[] {
+			"version", TEXT | StatusSnapshot.VERSION,
+			"boot_version", TEXT | StatusSnapshot.BOOT_VERSION,
+			"wifi_version", TEXT | StatusSnapshot.WIFI_VERSION,
+			"uuid", TEXT | StatusSnapshot.UUID,
+			"mac_address", TEXT | StatusSnapshot.MAC_ADDRESS,
+			"DHCP", SWITCH | StatusSnapshot.DHCP,
+			"has_been_backed_up", SWITCH | StatusSnapshot.BACKED_UP,
+			"has_auth_token", SWITCH | StatusSnapshot.AUTH_TOKEN,
+			"boot_status", TEXT | StatusSnapshot.BOOT_STATUS,
+			"auto_update", SWITCH | StatusSnapshot.AUTO_UPDATE,
+			"auto_dock", SWITCH | StatusSnapshot.AUTO_DOCK,
+			"restart_AC", SWITCH | StatusSnapshot.RESTART_AC,
+			"dock_at", NUMBER | StatusSnapshot.DOCK_AT,
+			"stop_at", NUMBER | StatusSnapshot.STOP_AT,
+			"time_h_m", TEXT | StatusSnapshot.TIME });
+
+	private static final Fields TC_STATUS = new Fields(new Object[] {
+			"name", TEXT | StatusSnapshot.TC_NAME,
+			"modelnr", TEXT | StatusSnapshot.MODEL_NUMBER,
+			"cleaning_time", TEXT | StatusSnapshot.CLEANING_TIME,
+			"cleaning_time_total", TEXT | StatusSnapshot.CLEANING_TIME_TOTAL,
+			"cleaning_distance", TEXT | StatusSnapshot.CLEANING_DISTANCE,
+			"dirt_detected", NUMBER | StatusSnapshot.DIRT_DETECTED,
+			"bin_status", SWITCH | StatusSnapshot.BIN_FULL,
+			"server_connection", SWITCH | StatusSnapshot.SERVER_CONNECTION,
+			"vacuum_drive", SWITCH | StatusSnapshot.VACUUM_DRIVE,
+			"clean_delay", NUMBER | StatusSnapshot.CLEAN_DELAY,
+			"schedule_serial_number", NUMBER | StatusSnapshot.SCHEDULE_SERIAL_NUMBER });
+
+	private static final Fields POWER_STATUS = new Fields(new Object[] {
+			"cleaner_state", STATE,
+			"cleaning", SWITCH | StatusSnapshot.CLEANING,
+			"low_power", SWITCH | StatusSnapshot.LOW_POWER,
+			"charge", NUMBER | StatusSnapshot.CHARGE,
+			"battery_charge", NUMBER | StatusSnapshot.BATTERY_CHARGE,
+			"capacity", NUMBER | StatusSnapshot.CAPACITY,
+			"current", NUMBER | StatusSnapshot.CURRENT,
+			"voltage", NUMBER | StatusSnapshot.VOLTAGE,
+			"temperature", NUMBER | StatusSnapshot.TEMPERATURE });
+
+	private static final Fields BUTTONS = new Fields(new Object[] {
+			"clean_button", SWITCH | StatusSnapshot.CLEAN_BUTTON,
+			"spot_button", SWITCH | StatusSnapshot.SPOT_BUTTON,
+			"dock_button", SWITCH | StatusSnapshot.DOCK_BUTTON });
+
+	private static final Fields SENSORS = new Fields(new Object[] {
+			"bumper_state", SWITCH | StatusSnapshot.BUMPER,
+			"bumper_left_state", SWITCH | StatusSnapshot.BUMPER_LEFT,
+			"bumper_right_state", SWITCH | StatusSnapshot.BUMPER_RIGHT,
+			"wheel_drop_left", SWITCH | StatusSnapshot.WHEEL_DROP_LEFT,
+			"wheel_drop_right", SWITCH | StatusSnapshot.WHEEL_DROP_RIGHT,
+			"wall", SWITCH | StatusSnapshot.WALL,
+			"virtual_wall", SWITCH | StatusSnapshot.VIRTUAL_WALL,
+			"cliff_left", SWITCH | StatusSnapshot.CLIFF_LEFT,
+			"cliff_front_left", SWITCH | StatusSnapshot.CLIFF_FRONT_LEFT,
+			"cliff_front_right", SWITCH | StatusSnapshot.CLIFF_FRONT_RIGHT,
+			"cliff_right", SWITCH | StatusSnapshot.CLIFF_RIGHT,
+			"dirt_detect", SWITCH | StatusSnapshot.DIRT_DETECT,
+			"light_bump", SWITCH | StatusSnapshot.LIGHT_BUMP,
+			"mainbrush_current", SWITCH | StatusSnapshot.MAINBRUSH_CURRENT,
+			"sidebrush_current", SWITCH | StatusSnapshot.SIDEBRUSH_CURRENT,
+			"homebase_detected", SWITCH | StatusSnapshot.HOMEBASE_DETECTED,
+			"near_homebase", SWITCH | StatusSnapshot.NEAR_HOMEBASE,
+			"IR_Omni", NUMBER | StatusSnapshot.IR_OMNI,
+			"IR_Left", NUMBER | StatusSnapshot.IR_LEFT,
+			"IR_Right", NUMBER | StatusSnapshot.IR_RIGHT });
+
+	private static final Fields WEBVIEW = new Fields(new Object[] {
+			"advanced", TEXT | StatusSnapshot.WEBVIEW_ADVANCED });
+
+	private static final Fields[] SECTIONS = { STATUS, FIRMWARE, TC_STATUS, POWER_STATUS, BUTTONS, SENSORS, WEBVIEW };
+
+	private static final Fields TOP = new Fields(new Object[] {
+			"status", SECTION | 0,
+			"firmware", SECTION | 1,
+			"tc_status", SECTION | 2,
+			"power_status", SECTION | 3,
+			"buttons", SECTION | 4,
+			"sensors", SECTION | 5,
+			"webview", SECTION | 6,
+			"action", TEXT | StatusSnapshot.ACTION,
+			"result", TEXT | StatusSnapshot.RESULT });
+
+	private final StatusSnapshot.Builder builder = new StatusSnapshot.Builder();
+	/** The last String made for each text field. */
+	private final String[] lastTexts = new String[StatusSnapshot.TEXT_FIELDS];
+
+	/** Holds the key or value being read. */
+	private char[] chars = new char[64];
+	private int length;
+
+	private byte[] body;
+	private int pos;
+	private int end;
+
+	/**
+	 * Reads a whole response.
+	 *
+	 * @param fullStatus
+	 *            Whether the body came from full_status.json.
+	 * @throws IOException
+	 *             If the body is not a JSON object.
+	 */
+	StatusSnapshot parse(final byte[] response, final boolean fullStatus) throws IOException {
+
+		return parse(response, 0, response.length, fullStatus);
+
+	}
+
+	StatusSnapshot parse(final byte[] response, final int offset, final int count, final boolean fullStatus)
+			throws IOException {
+
+		body = response;
+		pos = offset;
+		end = offset + count;
+		builder.reset(fullStatus);
+
+		try {
+			readObject(TOP);
+			skipWhitespace();
+			if (pos != end) {
+				throw malformed();
+			}
+			return builder.build();
+		} finally {
+			body = null;
+		}
+
+	}
+
+	// Structure \\
+	private void readObject(final Fields fields) throws IOException {
+
+		expect('{');
+		skipWhitespace();
+
+		if (peek() == '}') {
+			pos++;
+			return;
+		}
+
+		while (true) {
+			expect('"');
+			readString();
+			expect(':');
+			skipWhitespace();
+
+			final int field = fields.find(chars, length);
+			if (field < 0) {
+				skipValue();
+			} else if ((field & KIND) == SECTION) {
+				if (peek() == '{') {
+					readObject(SECTIONS[field & INDEX]);
+				} else {
+					skipValue();
+				}
+			} else {
+				readField(field);
+			}
+
+			skipWhitespace();
+			final int next = next();
+			if (next == '}') {
+				return;
+			}
+			if (next != ',') {
+				throw malformed();
+			}
+			skipWhitespace();
+		}
+
+	}
+
+	private void readField(final int field) throws IOException {
+
+		final int c = peek();
+
+		if (c == '{' || c == '[') {
+			skipValue();
+			return;
+		}
+
+		final boolean isNull = readScalar();
+		final int index = field & INDEX;
+
+		switch (field & KIND) {
+		case TEXT:
+			builder.texts[index] = isNull ? null : text(index);
+			builder.textsKnown |= 1L << index;
+			break;
+
+		case NUMBER:
+			builder.numbers[index] = isNull ? 0 : number();
+			builder.numbersKnown |= 1L << index;
+			break;
+
+		case SWITCH:
+			// As before, anything other than "0" counts as on.
+			if (!isNull && !(length == 1 && chars[0] == '0') && !isFalse()) {
+				builder.switches |= 1L << index;
+			} else {
+				builder.switches &= ~(1L << index);
+			}
+			builder.switchesKnown |= 1L << index;
+			break;
+
+		case STATE:
+			builder.cleanerState = isNull ? null : CleanerState.of(chars, length);
+			builder.stateCode = null;
+			if (builder.cleanerState == CleanerState.UNKNOWN) {
+				// A code the enum does not know is kept as it came.
+				final String code = new String(chars, 0, length);
+				if (!code.equals(CleanerState.UNKNOWN.code())) {
+					builder.stateCode = code;
+				}
+			}
+			builder.stateKnown = true;
+			break;
+		}
+
+	}
+
+	/**
+	 * Reads a string, number or literal into the buffer.
+	 *
+	 * @return Whether the value was null.
+	 */
+	private boolean readScalar() throws IOException {
+
+		if (peek() == '"') {
+			pos++;
+			readString();
+			return false;
+		}
+
+		length = 0;
+		while (pos < end) {
+			final int b = body[pos];
+			if (b == ',' || b == '}' || b == ']' || b <= ' ') {
+				break;
+			}
+			append((char) b);
+			pos++;
+		}
+
+		if (length == 0) {
+			throw malformed();
+		}
+
+		return length == 4 && chars[0] == 'n' && chars[1] == 'u' && chars[2] == 'l' && chars[3] == 'l';
+
+	}
+
+	private void skipValue() throws IOException {
+
+		final int c = peek();
+
+		if (c == '"') {
+			pos++;
+			skipString();
+			return;
+		}
+
+		if (c != '{' && c != '[') {
+			readScalar();
+			return;
+		}
+
+		int depth = 0;
+		do {
+			final int b = next();
+			if (b == '"') {
+				skipString();
+			} else if (b == '{' || b == '[') {
+				depth++;
+			} else if (b == '}' || b == ']') {
+				depth--;
+			}
+		} while (depth > 0);
+
+	}
+
+	// Values \\
+	/**
+	 * Reads the rest of a string, whose opening quote has been read, into the
+	 * buffer.
+	 */
+	private void readString() throws IOException {
+
+		length = 0;
+
+		while (true) {
+			final int b = next();
+
+			if (b == '"') {
+				return;
+			}
+
+			if (b == '\\') {
+				readEscape();
+			} else if (b >= 0) {
+				append((char) b);
+			} else {
+				readMultiByte(b);
+			}
+		}
+
+	}
+
+	private void skipString() throws IOException {
+
+		while (true) {
+			final int b = next();
+			if (b == '"') {
+				return;
+			}
+			if (b == '\\') {
+				next();
+			}
+		}
+
+	}
+
+	private void readEscape() throws IOException {
+
+		final int b = next();
+
+		switch (b) {
+		case 'b':
+			append('\b');
+			break;
+		case 'f':
+			append('\f');
+			break;
+		case 'n':
+			append('\n');
+			break;
+		case 'r':
+			append('\r');
+			break;
+		case 't':
+			append('\t');
+			break;
+		case 'u':
+			int code = 0;
+			for (int i = 0; i < 4; i++) {
+				final int digit = Character.digit(next(), 16);
+				if (digit < 0) {
+					throw malformed();
+				}
+				code = code << 4 | digit;
+			}
+			append((char) code);
+			break;
+		default:
+			append((char) b);
+			break;
+		}
+
+	}
+
+	/**
+	 * Decodes a UTF-8 sequence whose first byte has been read.
+	 */
+	private void readMultiByte(final int first) throws IOException {
+
+		final int lead = first & 0xff;
+		int extra;
+		int code;
+
+		if (lead >= 0xf0) {
+			extra = 3;
+			code = lead & 0x07;
+		} else if (lead >= 0xe0) {
+			extra = 2;
+			code = lead & 0x0f;
+		} else if (lead >= 0xc0) {
+			extra = 1;
+			code = lead & 0x1f;
+		} else {
+			throw malformed();
+		}
+
+		while (extra-- > 0) {
+			code = code << 6 | (next() & 0x3f);
+		}
+
+		if (code >= 0x10000) {
+			append(Character.highSurrogate(code));
+			append(Character.lowSurrogate(code));
+		} else {
+			append((char) code);
+		}
+
+	}
+
+	/**
+	 * The buffer as a String, reusing the last one made for the field when it
+	 * has not changed.
+	 */
+	private String text(final int index) {
+
+		final String last = lastTexts[index];
+
+		if (last != null && last.length() == length) {
+			int i = 0;
+			while (i < length && last.charAt(i) == chars[i]) {
+				i++;
+			}
+			if (i == length) {
+				return last;
+			}
+		}
+
+		final String text = new String(chars, 0, length);
+		lastTexts[index] = text;
+
+		return text;
+
+	}
+
+	/**
+	 * The buffer as a whole number. Anything after a decimal point is dropped.
+	 */
+	private int number() throws IOException {
+
+		int i = 0;
+		boolean negative = false;
+
+		if (length > 0 && (chars[0] == '-' || chars[0] == '+')) {
+			negative = chars[0] == '-';
+			i++;
+		}
+
+		if (i == length) {
+			throw malformed();
+		}
+
+		long value = 0;
+		for (; i < length; i++) {
+			final char c = chars[i];
+			if (c == '.') {
+				break;
+			}
+			if (c < '0' || c > '9' || value > Integer.MAX_VALUE) {
+				throw malformed();
+			}
+			value = value * 10 + (c - '0');
+		}
+
+		return (int) (negative ? -value : value);
+
+	}
+
+	private boolean isFalse() {
+
+		return length == 5 && chars[0] == 'f' && chars[1] == 'a' && chars[2] == 'l' && chars[3] == 's'
+				&& chars[4] == 'e';
+
+	}
+
+	// Bytes \\
+	private void append(final char c) {
+
+		if (length == chars.length) {
+			final char[] grown = new char[length * 2];
+			System.arraycopy(chars, 0, grown, 0, length);
+			chars = grown;
+		}
+
+		chars[length++] = c;
+
+	}
+
+	private int next() throws IOException {
+
+		if (pos >= end) {
+			throw malformed();
+		}
+
+		return body[pos++];
+
+	}
+
+	private int peek() throws IOException {
+
+		if (pos >= end) {
+			throw malformed();
+		}
+
+		return body[pos];
+
+	}
+
+	private void expect(final char c) throws IOException {
+
+		skipWhitespace();
+
+		if (next() != c) {
+			throw malformed();
+		}
+
+	}
+
+	private void skipWhitespace() {
+
+		while (pos < end && body[pos] <= ' ' && body[pos] >= 0) {
+			pos++;
+		}
+
+	}
+
+	private IOException malformed() {
+
+		return new IOException("Malformed status response at byte " + pos);
+
+	}
+
+	/**
+	 * The keys of one section and the field each one fills.
+	 */
+	private static final class Fields {
+
+		private final char[][] keys;
+		private final int[] fields;
+
+		Fields(final Object[] pairs) {
+
+			keys = new char[pairs.length / 2][];
+			fields = new int[pairs.length / 2];
+
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = ((String) pairs[2 * i]).toCharArray();
+				fields[i] = (Integer) pairs[2 * i + 1];
+			}
+
+		}
+
+		/**
+		 * @return The field for the key, or -1 if it is not one we read.
+		 */
+		int find(final char[] key, final int length) {
+
+			for (int i = 0; i < keys.length; i++) {
+				final char[] candidate = keys[i];
+				if (candidate.length != length) {
+					continue;
+				}
+				int j = 0;
+				while (j < length && candidate[j] == key[j]) {
+					j++;
+				}
+				if (j == length) {
+					return fields[i];
+				}
+			}
+
+			return -1;
+
+		}
+
+	}
+
+}
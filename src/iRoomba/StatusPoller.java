@@ -0,0 +1,315 @@
+package iRoomba;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Fetches the status of subscribed Robots in the background, as often as
+ * their current state calls for.
+ * <p>
+ * A Robot that is cleaning, docking or being driven is polled every
+ * {@code activeInterval}. One sitting on its homebase or plugged in is
+ * polled every {@code restingInterval}, and one that is turned off every
+ * {@code offInterval}. Any other state uses {@code interval}.
+ * </p>
+ * <p>
+ * Polls are started by a timer and sent through each Robot's
+ * {@link AsyncRobot}, so no thread waits on a device and thousands of Robots
+ * can share the one timer thread. A Robot is only polled while it has
+ * subscribers.
+ * </p>
+ */
+public class StatusPoller {
+
+	private static final StatusPoller SHARED = new StatusPoller(RobotExecutors.scheduler(), 500, 2000, 10000, 60000);
+
+	private final ScheduledExecutorService scheduler;
+	private final long activeInterval;
+	private final long interval;
+	private final long restingInterval;
+	private final long offInterval;
+
+	private final ConcurrentHashMap<Robot, Polling> robots = new ConcurrentHashMap<Robot, Polling>();
+
+	/**
+	 * @param scheduler
+	 *            The timer that starts the polls. It must not be used for
+	 *            blocking work.
+	 * @param activeInterval
+	 *            Milliseconds between polls while cleaning, docking or driven.
+	 * @param interval
+	 *            Milliseconds between polls in states not listed here.
+	 * @param restingInterval
+	 *            Milliseconds between polls while on the homebase or plugged
+	 *            in.
+	 * @param offInterval
+	 *            Milliseconds between polls while turned off.
+	 */
+	public StatusPoller(final ScheduledExecutorService scheduler, final long activeInterval, final long interval,
+			final long restingInterval, final long offInterval) {
+
+		if (activeInterval <= 0 || interval <= 0 || restingInterval <= 0 || offInterval <= 0) {
+			throw new IllegalArgumentException("Intervals must be positive");
+		}
+
+		this.scheduler = scheduler;
+		this.activeInterval = activeInterval;
+		this.interval = interval;
+		this.restingInterval = restingInterval;
+		this.offInterval = offInterval;
+
+	}
+
+	/**
+	 * The poller used by {@link Robot#subscribe(StatusListener)}, which runs on
+	 * the timer thread shared by every Robot.
+	 */
+	public static StatusPoller shared() {
+
+		return SHARED;
+
+	}
+
+	/**
+	 * Starts polling the Robot, if it is not polled already, and passes every
+	 * status fetched to the listener. The endpoint is chosen as by
+	 * {@link Robot#statusUpdate()}, from the sections read since the last
+	 * polls, without affecting what that method chooses.
+	 */
+	public Subscription subscribe(final Robot robot, final StatusListener listener) {
+
+		return subscribe(robot, listener, StatusEndpoint.SIMPLE);
+
+	}
+
+	/**
+	 * Starts polling the Robot, if it is not polled already, and passes every
+	 * status fetched to the listener.
+	 *
+	 * @param endpoint
+	 *            The least the listener needs. While any listener asks for
+	 *            {@link StatusEndpoint#FULL}, every poll fetches the full status.
+	 */
+	public Subscription subscribe(final Robot robot, final StatusListener listener, final StatusEndpoint endpoint) {
+
+		final Entry entry = new Entry(listener, endpoint == StatusEndpoint.FULL);
+
+		while (true) {
+			final Polling polling = robots.computeIfAbsent(robot, new Function<Robot, Polling>() {
+
+				@Override
+				public Polling apply(final Robot key) {
+
+					return new Polling(key);
+
+				}
+
+			});
+
+			if (polling.add(entry)) {
+				return new Subscription() {
+
+					@Override
+					public void cancel() {
+
+						polling.remove(entry);
+
+					}
+
+				};
+			}
+			// It stopped just now; make way for a new one.
+			robots.remove(robot, polling);
+		}
+
+	}
+
+	/** Whether the Robot has subscribers and is being polled. */
+	public boolean isPolling(final Robot robot) {
+
+		return robots.containsKey(robot);
+
+	}
+
+	/** The number of Robots being polled. */
+	public int size() {
+
+		return robots.size();
+
+	}
+
+	/**
+	 * Milliseconds to wait before polling a Robot in the given state.
+	 */
+	public long intervalFor(final CleanerState state) {
+
+		if (state == null) {
+			return interval;
+		}
+
+		switch (state) {
+		case CLEAN:
+		case CLEAN_SPOT:
+		case CLEAN_MAX:
+		case REMOTE:
+		case DOCK:
+		case LOCATE:
+			return activeInterval;
+
+		case BASE:
+		case BASE_RECON:
+		case BASE_FULL:
+		case BASE_TRICKLE:
+		case BASE_WAIT:
+		case PLUG:
+		case PLUG_RECON:
+		case PLUG_FULL:
+		case PLUG_TRICKLE:
+		case PLUG_WAIT:
+			return restingInterval;
+
+		case OFF:
+			return offInterval;
+
+		default:
+			return interval;
+		}
+
+	}
+
+	/**
+	 * A listener and what it needs.
+	 */
+	private static final class Entry {
+
+		final StatusListener listener;
+		final boolean wantsFullStatus;
+
+		Entry(final StatusListener listener, final boolean wantsFullStatus) {
+
+			this.listener = listener;
+			this.wantsFullStatus = wantsFullStatus;
+
+		}
+
+	}
+
+	/**
+	 * The polling of one Robot. Lives from its first subscriber until its
+	 * last one leaves.
+	 */
+	private final class Polling implements Runnable {
+
+		private final Robot robot;
+		private final CopyOnWriteArrayList<Entry> entries = new CopyOnWriteArrayList<Entry>();
+		/** Guarded by this. */
+		private boolean stopped = false;
+		private ScheduledFuture<?> next = null;
+
+		Polling(final Robot robot) {
+
+			this.robot = robot;
+
+		}
+
+		/**
+		 * @return False if polling has already stopped for good.
+		 */
+		synchronized boolean add(final Entry entry) {
+
+			if (stopped) {
+				return false;
+			}
+
+			entries.add(entry);
+
+			if (next == null) {
+				// Spread the first polls out, so that many Robots subscribed
+				// at once do not all poll together.
+				final long first = ThreadLocalRandom.current().nextLong(Math.min(activeInterval, interval) + 1);
+				next = scheduler.schedule(this, first, TimeUnit.MILLISECONDS);
+			}
+
+			return true;
+
+		}
+
+		void remove(final Entry entry) {
+
+			synchronized (this) {
+				if (!entries.remove(entry) || !entries.isEmpty()) {
+					return;
+				}
+				stopped = true;
+				if (next != null) {
+					next.cancel(false);
+				}
+			}
+
+			robots.remove(robot, this);
+
+		}
+
+		@Override
+		public void run() {
+
+			boolean full = false;
+			for (final Entry entry : entries) {
+				full |= entry.wantsFullStatus;
+			}
+
+			// The poller keeps its own rounds of watching what is read, so
+			// polling does not reset what the caller's updates go by.
+			final CompletableFuture<Robot> update = robot.async()
+					.statusUpdate(full || robot.choosePolledEndpoint() == StatusEndpoint.FULL);
+
+			update.whenComplete(new BiConsumer<Robot, Throwable>() {
+
+				@Override
+				public void accept(final Robot ignored, final Throwable failure) {
+
+					final StatusSnapshot snapshot = robot.currentSnapshot();
+
+					if (failure == null && snapshot != null) {
+						deliver(snapshot);
+					}
+
+					reschedule(snapshot);
+
+				}
+
+			});
+
+		}
+
+		private void deliver(final StatusSnapshot snapshot) {
+
+			for (final Entry entry : entries) {
+				try {
+					entry.listener.onStatus(robot, snapshot);
+				} catch (final RuntimeException e) {
+					// One faulty listener must not stop the others or the polling.
+				}
+			}
+
+		}
+
+		private synchronized void reschedule(final StatusSnapshot snapshot) {
+
+			if (!stopped) {
+				next = scheduler.schedule(this, intervalFor(snapshot == null ? null : snapshot.cleanerState()),
+						TimeUnit.MILLISECONDS);
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,25 @@
+package iRoomba;
+
+/**
+ * The parts of a Thinking Cleaner's status, each of which goes out of date at
+ * its own pace.
+ */
+public enum StatusSection {
+
+	/**
+	 * The fields status.json also reports: cleaner state, charge, cleaning
+	 * and whether the Roomba is near its homebase.
+	 */
+	STATUS,
+	/** Versions, addresses and settings of the module. */
+	FIRMWARE,
+	/** Cleaning times, distances and the bin warning. */
+	TC_STATUS,
+	/** Current, voltage, temperature and the rest of the battery readings. */
+	POWER_STATUS,
+	BUTTONS,
+	/** Bumpers, wheel drops, cliffs, walls and infrared readings. */
+	SENSORS,
+	WEBVIEW;
+
+}
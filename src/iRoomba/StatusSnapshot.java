@@ -0,0 +1,800 @@
+package iRoomba;
+
+import java.util.Arrays;
+
+/**
+ * The typed contents of one status.json or full_status.json response, along
+ * with whatever a Robot already knew from earlier responses.
+ * <p>
+ * A simple status only carries a few fields, so the snapshot a Robot makes
+ * from one keeps every other field from the last full status. Which endpoint
+ * answered last and when each kind was read are recorded, so it is always
+ * clear how old the data is. Fields no response has contained yet read as 0,
+ * false or null.
+ * </p>
+ * <p>
+ * Snapshots never change once made, so they can be handed between threads
+ * freely.
+ * </p>
+ */
+public final class StatusSnapshot {
+
+	// Text fields \\
+	static final int NAME = 0;
+	static final int ACTION = 1;
+	static final int RESULT = 2;
+	static final int VERSION = 3;
+	static final int BOOT_VERSION = 4;
+	static final int WIFI_VERSION = 5;
+	static final int UUID = 6;
+	static final int MAC_ADDRESS = 7;
+	static final int BOOT_STATUS = 8;
+	static final int TIME = 9;
+	static final int TC_NAME = 10;
+	static final int MODEL_NUMBER = 11;
+	static final int CLEANING_TIME = 12;
+	static final int CLEANING_TIME_TOTAL = 13;
+	static final int CLEANING_DISTANCE = 14;
+	static final int WEBVIEW_ADVANCED = 15;
+	static final int TEXT_FIELDS = 16;
+
+	// Number fields \\
+	static final int DOCK_AT = 0;
+	static final int STOP_AT = 1;
+	static final int DIRT_DETECTED = 2;
+	static final int CLEAN_DELAY = 3;
+	static final int SCHEDULE_SERIAL_NUMBER = 4;
+	static final int CURRENT = 5;
+	static final int CHARGE = 6;
+	static final int BATTERY_CHARGE = 7;
+	static final int CAPACITY = 8;
+	static final int VOLTAGE = 9;
+	static final int TEMPERATURE = 10;
+	static final int IR_OMNI = 11;
+	static final int IR_LEFT = 12;
+	static final int IR_RIGHT = 13;
+	static final int NUMBER_FIELDS = 14;
+
+	// Switches, each a bit of one long \\
+	static final int DHCP = 0;
+	static final int BACKED_UP = 1;
+	static final int AUTH_TOKEN = 2;
+	static final int AUTO_UPDATE = 3;
+	static final int AUTO_DOCK = 4;
+	static final int RESTART_AC = 5;
+	static final int BIN_FULL = 6;
+	static final int SERVER_CONNECTION = 7;
+	static final int VACUUM_DRIVE = 8;
+	static final int CLEANING = 9;
+	static final int LOW_POWER = 10;
+	static final int CLEAN_BUTTON = 11;
+	static final int SPOT_BUTTON = 12;
+	static final int DOCK_BUTTON = 13;
+	static final int BUMPER = 14;
+	static final int BUMPER_LEFT = 15;
+	static final int BUMPER_RIGHT = 16;
+	static final int WHEEL_DROP_LEFT = 17;
+	static final int WHEEL_DROP_RIGHT = 18;
+	static final int WALL = 19;
+	static final int VIRTUAL_WALL = 20;
+	static final int CLIFF_LEFT = 21;
+	static final int CLIFF_FRONT_LEFT = 22;
+	static final int CLIFF_FRONT_RIGHT = 23;
+	static final int CLIFF_RIGHT = 24;
+	static final int DIRT_DETECT = 25;
+	static final int LIGHT_BUMP = 26;
+	static final int MAINBRUSH_CURRENT = 27;
+	static final int SIDEBRUSH_CURRENT = 28;
+	static final int HOMEBASE_DETECTED = 29;
+	static final int NEAR_HOMEBASE = 30;
+	static final int SWITCH_FIELDS = 31;
+
+	// Groups of switches \\
+	static final long BUTTONS = 1L << CLEAN_BUTTON | 1L << SPOT_BUTTON | 1L << DOCK_BUTTON;
+	static final long BUMPERS = 1L << BUMPER | 1L << BUMPER_LEFT | 1L << BUMPER_RIGHT;
+	static final long WHEEL_DROPS = 1L << WHEEL_DROP_LEFT | 1L << WHEEL_DROP_RIGHT;
+	static final long CLIFFS = 1L << CLIFF_LEFT | 1L << CLIFF_FRONT_LEFT | 1L << CLIFF_FRONT_RIGHT | 1L << CLIFF_RIGHT;
+
+	private final StatusEndpoint source;
+	/** The address of the Robot the snapshot belongs to, or null. */
+	private final String ip;
+	private final long version;
+	/** When the last response was read, by the wall clock and by System.nanoTime. */
+	private final long fetchedAt;
+	private final long fetchedNanos;
+	/** When the last full status was read, if there has been one. */
+	private final boolean hasFullStatus;
+	private final long fullFetchedAt;
+	private final long fullFetchedNanos;
+
+	private final CleanerState cleanerState;
+	/** The cleaner_state code, if it is one CleanerState does not know. */
+	private final String stateCode;
+	private final String[] texts;
+	private final int[] numbers;
+	/** One bit per switch, set when it is on. */
+	private final long switches;
+
+	/** Which fields some response has reported, one bit per field. */
+	private final boolean stateKnown;
+	private final long textsKnown;
+	private final long numbersKnown;
+	private final long switchesKnown;
+
+	private StatusSnapshot(final Builder builder) {
+
+		this.source = builder.full ? StatusEndpoint.FULL : StatusEndpoint.SIMPLE;
+		this.ip = null;
+		this.version = 0;
+		this.fetchedAt = builder.fetchedAt;
+		this.fetchedNanos = builder.fetchedNanos;
+		this.hasFullStatus = builder.full;
+		this.fullFetchedAt = builder.full ? builder.fetchedAt : 0;
+		this.fullFetchedNanos = builder.full ? builder.fetchedNanos : 0;
+		this.cleanerState = builder.cleanerState;
+		this.stateCode = builder.stateCode;
+		this.texts = builder.texts.clone();
+		this.numbers = builder.numbers.clone();
+		this.switches = builder.switches;
+		this.stateKnown = builder.stateKnown;
+		this.textsKnown = builder.textsKnown;
+		this.numbersKnown = builder.numbersKnown;
+		this.switchesKnown = builder.switchesKnown;
+
+	}
+
+	/**
+	 * Makes this response the newest one a Robot has, keeping every field it
+	 * did not report from the previous snapshot.
+	 *
+	 * @param previous
+	 *            The snapshot it replaces, or null if there is none.
+	 * @param newVersion
+	 *            The number of the new snapshot.
+	 * @param ip
+	 *            The address of the Robot it belongs to.
+	 */
+	private StatusSnapshot(final StatusSnapshot latest, final StatusSnapshot previous, final long newVersion,
+			final String ip) {
+
+		this.source = latest.source;
+		this.ip = ip;
+		this.version = newVersion;
+		this.fetchedAt = latest.fetchedAt;
+		this.fetchedNanos = latest.fetchedNanos;
+
+		final boolean keepFull = !latest.hasFullStatus && previous != null && previous.hasFullStatus;
+		this.hasFullStatus = latest.hasFullStatus || keepFull;
+		this.fullFetchedAt = keepFull ? previous.fullFetchedAt : latest.fullFetchedAt;
+		this.fullFetchedNanos = keepFull ? previous.fullFetchedNanos : latest.fullFetchedNanos;
+
+		this.texts = latest.texts.clone();
+		this.numbers = latest.numbers.clone();
+
+		if (previous == null) {
+			this.cleanerState = latest.cleanerState;
+			this.stateCode = latest.stateCode;
+			this.switches = latest.switches;
+			this.stateKnown = latest.stateKnown;
+			this.textsKnown = latest.textsKnown;
+			this.numbersKnown = latest.numbersKnown;
+			this.switchesKnown = latest.switchesKnown;
+			return;
+		}
+
+		for (int i = 0; i < TEXT_FIELDS; i++) {
+			if ((latest.textsKnown & 1L << i) == 0) {
+				texts[i] = previous.texts[i];
+			}
+		}
+		for (int i = 0; i < NUMBER_FIELDS; i++) {
+			if ((latest.numbersKnown & 1L << i) == 0) {
+				numbers[i] = previous.numbers[i];
+			}
+		}
+
+		this.cleanerState = latest.stateKnown ? latest.cleanerState : previous.cleanerState;
+		this.stateCode = latest.stateKnown ? latest.stateCode : previous.stateCode;
+		this.switches = latest.switches & latest.switchesKnown | previous.switches & ~latest.switchesKnown;
+		this.stateKnown = latest.stateKnown || previous.stateKnown;
+		this.textsKnown = latest.textsKnown | previous.textsKnown;
+		this.numbersKnown = latest.numbersKnown | previous.numbersKnown;
+		this.switchesKnown = latest.switchesKnown | previous.switchesKnown;
+
+	}
+
+	/**
+	 * This response laid over the snapshot it replaces.
+	 */
+	StatusSnapshot after(final StatusSnapshot previous, final long newVersion, final String ip) {
+
+		return new StatusSnapshot(this, previous, newVersion, ip);
+
+	}
+
+	/** The endpoint that answered most recently. */
+	public StatusEndpoint source() {
+
+		return source;
+
+	}
+
+	/**
+	 * The address of the Robot this snapshot belongs to, as given to its
+	 * constructor. Unlike {@link #name()}, which the owner sets on the
+	 * device, this tells the Robots of a fleet apart.
+	 */
+	public String ip() {
+
+		return ip;
+
+	}
+
+	/** Whether the latest response came from full_status.json. */
+	public boolean isFull() {
+
+		return source == StatusEndpoint.FULL;
+
+	}
+
+	/**
+	 * Counts the snapshots a Robot has made. A snapshot with a higher version
+	 * is always newer.
+	 */
+	public long version() {
+
+		return version;
+
+	}
+
+	/** The time the latest response was read, in milliseconds since the epoch. */
+	public long fetchedAt() {
+
+		return fetchedAt;
+
+	}
+
+	/** Milliseconds since the latest response was read. */
+	public long ageMillis() {
+
+		return (System.nanoTime() - fetchedNanos) / 1000000L;
+
+	}
+
+	/**
+	 * Whether a full status has been read, so that the fields only it carries
+	 * are known.
+	 */
+	public boolean hasFullStatus() {
+
+		return hasFullStatus;
+
+	}
+
+	/**
+	 * The time the last full status was read, in milliseconds since the
+	 * epoch, or 0 if there has not been one.
+	 */
+	public long fullFetchedAt() {
+
+		return fullFetchedAt;
+
+	}
+
+	/**
+	 * Milliseconds since the last full status was read, or -1 if there has
+	 * not been one.
+	 */
+	public long fullAgeMillis() {
+
+		return hasFullStatus ? (System.nanoTime() - fullFetchedNanos) / 1000000L : -1;
+
+	}
+
+	public String action() {
+
+		return texts[ACTION];
+
+	}
+
+	public String result() {
+
+		return texts[RESULT];
+
+	}
+
+	/** The name of the Robot, only present in status.json. */
+	public String name() {
+
+		return texts[NAME];
+
+	}
+
+	/**
+	 * The state of the cleaner, or {@link CleanerState#UNKNOWN} for a code
+	 * this API does not know. The code itself is kept in
+	 * {@link #cleanerStateCode()}.
+	 */
+	public CleanerState cleanerState() {
+
+		return cleanerState;
+
+	}
+
+	/**
+	 * The cleaner_state code as the device sent it, such as "st_base", even
+	 * if {@link CleanerState} does not know it, or null.
+	 */
+	public String cleanerStateCode() {
+
+		if (stateCode != null) {
+			return stateCode;
+		}
+
+		return cleanerState == null ? null : cleanerState.code();
+
+	}
+
+	// Firmware \\
+	/** The firmware version of the module. */
+	public String firmwareVersion() {
+
+		return texts[VERSION];
+
+	}
+
+	public String bootVersion() {
+
+		return texts[BOOT_VERSION];
+
+	}
+
+	public String wifiVersion() {
+
+		return texts[WIFI_VERSION];
+
+	}
+
+	public String uuid() {
+
+		return texts[UUID];
+
+	}
+
+	public String macAddress() {
+
+		return texts[MAC_ADDRESS];
+
+	}
+
+	public String bootStatus() {
+
+		return texts[BOOT_STATUS];
+
+	}
+
+	public String time() {
+
+		return texts[TIME];
+
+	}
+
+	public boolean usesDHCP() {
+
+		return is(DHCP);
+
+	}
+
+	public boolean hasBeenBackedUp() {
+
+		return is(BACKED_UP);
+
+	}
+
+	public boolean hasAuthToken() {
+
+		return is(AUTH_TOKEN);
+
+	}
+
+	public boolean autoUpdate() {
+
+		return is(AUTO_UPDATE);
+
+	}
+
+	public boolean autoDock() {
+
+		return is(AUTO_DOCK);
+
+	}
+
+	public boolean restartAfterCharge() {
+
+		return is(RESTART_AC);
+
+	}
+
+	public int dockAt() {
+
+		return numbers[DOCK_AT];
+
+	}
+
+	public int stopAt() {
+
+		return numbers[STOP_AT];
+
+	}
+
+	// Thinking Cleaner Status \\
+	public String tcName() {
+
+		return texts[TC_NAME];
+
+	}
+
+	public String modelNumber() {
+
+		return texts[MODEL_NUMBER];
+
+	}
+
+	public String cleaningTime() {
+
+		return texts[CLEANING_TIME];
+
+	}
+
+	public String cleaningTimeTotal() {
+
+		return texts[CLEANING_TIME_TOTAL];
+
+	}
+
+	public String cleaningDistance() {
+
+		return texts[CLEANING_DISTANCE];
+
+	}
+
+	public int dirtDetections() {
+
+		return numbers[DIRT_DETECTED];
+
+	}
+
+	public boolean binFull() {
+
+		return is(BIN_FULL);
+
+	}
+
+	public boolean serverConnection() {
+
+		return is(SERVER_CONNECTION);
+
+	}
+
+	public boolean vacuumDrive() {
+
+		return is(VACUUM_DRIVE);
+
+	}
+
+	public int cleanDelay() {
+
+		return numbers[CLEAN_DELAY];
+
+	}
+
+	public int scheduleSerialNumber() {
+
+		return numbers[SCHEDULE_SERIAL_NUMBER];
+
+	}
+
+	// Power Status \\
+	public boolean isCleaning() {
+
+		return is(CLEANING);
+
+	}
+
+	public boolean isLowOnPower() {
+
+		return is(LOW_POWER);
+
+	}
+
+	public int current() {
+
+		return numbers[CURRENT];
+
+	}
+
+	public int charge() {
+
+		return numbers[CHARGE];
+
+	}
+
+	public int batteryCharge() {
+
+		return numbers[BATTERY_CHARGE];
+
+	}
+
+	public int capacity() {
+
+		return numbers[CAPACITY];
+
+	}
+
+	public int voltage() {
+
+		return numbers[VOLTAGE];
+
+	}
+
+	public int temperature() {
+
+		return numbers[TEMPERATURE];
+
+	}
+
+	// Buttons \\
+	public boolean cleanButton() {
+
+		return is(CLEAN_BUTTON);
+
+	}
+
+	public boolean spotButton() {
+
+		return is(SPOT_BUTTON);
+
+	}
+
+	public boolean dockButton() {
+
+		return is(DOCK_BUTTON);
+
+	}
+
+	// Sensors \\
+	public boolean bumper() {
+
+		return is(BUMPER);
+
+	}
+
+	public boolean bumperLeft() {
+
+		return is(BUMPER_LEFT);
+
+	}
+
+	public boolean bumperRight() {
+
+		return is(BUMPER_RIGHT);
+
+	}
+
+	public boolean wheelDropLeft() {
+
+		return is(WHEEL_DROP_LEFT);
+
+	}
+
+	public boolean wheelDropRight() {
+
+		return is(WHEEL_DROP_RIGHT);
+
+	}
+
+	public boolean wall() {
+
+		return is(WALL);
+
+	}
+
+	public boolean virtualWall() {
+
+		return is(VIRTUAL_WALL);
+
+	}
+
+	public boolean cliffLeft() {
+
+		return is(CLIFF_LEFT);
+
+	}
+
+	public boolean cliffFrontLeft() {
+
+		return is(CLIFF_FRONT_LEFT);
+
+	}
+
+	public boolean cliffFrontRight() {
+
+		return is(CLIFF_FRONT_RIGHT);
+
+	}
+
+	public boolean cliffRight() {
+
+		return is(CLIFF_RIGHT);
+
+	}
+
+	public boolean dirtDetect() {
+
+		return is(DIRT_DETECT);
+
+	}
+
+	public boolean lightBump() {
+
+		return is(LIGHT_BUMP);
+
+	}
+
+	public boolean mainbrushCurrent() {
+
+		return is(MAINBRUSH_CURRENT);
+
+	}
+
+	public boolean sidebrushCurrent() {
+
+		return is(SIDEBRUSH_CURRENT);
+
+	}
+
+	public boolean homebaseDetected() {
+
+		return is(HOMEBASE_DETECTED);
+
+	}
+
+	public boolean nearHomebase() {
+
+		return is(NEAR_HOMEBASE);
+
+	}
+
+	public int irOmni() {
+
+		return numbers[IR_OMNI];
+
+	}
+
+	public int irLeft() {
+
+		return numbers[IR_LEFT];
+
+	}
+
+	public int irRight() {
+
+		return numbers[IR_RIGHT];
+
+	}
+
+	/**
+	 * All of the switches, one bit each.
+	 */
+	long switches() {
+
+		return switches;
+
+	}
+
+	/**
+	 * The switches some response has reported, one bit each.
+	 */
+	long knownSwitches() {
+
+		return switchesKnown;
+
+	}
+
+	/**
+	 * Whether any of the switches in the mask is on.
+	 */
+	boolean any(final long mask) {
+
+		return (switches & mask) != 0;
+
+	}
+
+	public boolean isPressed(final Button button) {
+
+		return any(button.mask);
+
+	}
+
+	public boolean isPressed(final Bumper bumper) {
+
+		return any(bumper.mask);
+
+	}
+
+	public boolean hasDropped(final Wheel wheel) {
+
+		return any(wheel.mask);
+
+	}
+
+	public boolean detects(final Cliff cliff) {
+
+		return any(cliff.mask);
+
+	}
+
+	public int irReading(final IrSensor sensor) {
+
+		return numbers[sensor.field];
+
+	}
+
+	private boolean is(final int bit) {
+
+		return (switches & 1L << bit) != 0;
+
+	}
+
+	// Webview \\
+	public String webviewAdvanced() {
+
+		return texts[WEBVIEW_ADVANCED];
+
+	}
+
+	/**
+	 * Collects the fields of a snapshot while a response is parsed. One
+	 * Builder is reused for every response a parser reads.
+	 */
+	static final class Builder {
+
+		boolean full;
+		long fetchedAt;
+		long fetchedNanos;
+		CleanerState cleanerState;
+		String stateCode;
+		final String[] texts = new String[TEXT_FIELDS];
+		final int[] numbers = new int[NUMBER_FIELDS];
+		long switches;
+		boolean stateKnown;
+		long textsKnown;
+		long numbersKnown;
+		long switchesKnown;
+
+		void reset(final boolean fullStatus) {
+
+			full = fullStatus;
+			fetchedAt = System.currentTimeMillis();
+			fetchedNanos = System.nanoTime();
+			cleanerState = null;
+			stateCode = null;
+			Arrays.fill(texts, null);
+			Arrays.fill(numbers, 0);
+			switches = 0;
+			stateKnown = false;
+			textsKnown = 0;
+			numbersKnown = 0;
+			switchesKnown = 0;
+
+		}
+
+		StatusSnapshot build() {
+
+			return new StatusSnapshot(this);
+
+		}
+
+	}
+
+}
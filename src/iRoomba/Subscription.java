@@ -0,0 +1,11 @@
+package iRoomba;
+
+/**
+ * A registered listener, which stays registered until it is cancelled.
+ */
+public interface Subscription {
+
+	/** Stops delivery. Calling this more than once does nothing. */
+	void cancel();
+
+}
@@ -0,0 +1,56 @@
+package iRoomba;
+
+/**
+ * The readings a {@link TelemetryStore} keeps, one column each.
+ * <p>
+ * The order of the columns is part of the file format.
+ * </p>
+ */
+public enum TelemetryColumn {
+
+	/** When the status was fetched, in milliseconds since the epoch. */
+	TIME,
+	VOLTAGE,
+	CURRENT,
+	TEMPERATURE,
+	BATTERY_CHARGE,
+	CHARGE,
+	CAPACITY,
+	DIRT_DETECTIONS,
+	/** The {@link CleanerState#id() id} of the state, or -1 if there was none. */
+	CLEANER_STATE,
+	/** The switches of the status, such as the sensors, one bit each. */
+	SWITCHES;
+
+	static final TelemetryColumn[] COLUMNS = values();
+
+	/** The value of this column in a snapshot. */
+	long of(final StatusSnapshot snapshot) {
+
+		switch (this) {
+		case TIME:
+			return snapshot.fetchedAt();
+		case VOLTAGE:
+			return snapshot.voltage();
+		case CURRENT:
+			return snapshot.current();
+		case TEMPERATURE:
+			return snapshot.temperature();
+		case BATTERY_CHARGE:
+			return snapshot.batteryCharge();
+		case CHARGE:
+			return snapshot.charge();
+		case CAPACITY:
+			return snapshot.capacity();
+		case DIRT_DETECTIONS:
+			return snapshot.dirtDetections();
+		case CLEANER_STATE:
+			final CleanerState state = snapshot.cleanerState();
+			return state == null ? -1 : state.id();
+		default:
+			return snapshot.switches();
+		}
+
+	}
+
+}
@@ -0,0 +1,223 @@
+package iRoomba;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+
+/**
+ * One sample in a {@link TelemetryRecorder} file, read in place.
+ * <p>
+ * A TelemetryRecord is only a view onto the mapped file. The recorder moves
+ * the same instance from sample to sample while scanning, so it must not be
+ * kept once the visitor returns; copy out the values that are needed.
+ * </p>
+ */
+public final class TelemetryRecord {
+
+	// Layout of a record, in bytes \\
+	static final int FETCHED_AT = 0;
+	static final int SWITCHES = 8;
+	static final int SWITCHES_KNOWN = 16;
+	static final int VOLTAGE = 24;
+	static final int CURRENT = 28;
+	static final int TEMPERATURE = 32;
+	static final int BATTERY_CHARGE = 36;
+	static final int CHARGE = 40;
+	static final int CAPACITY = 44;
+	static final int STATE = 48;
+	/**
+	 * Cleared first and written last, so a sample cut off by a crash can be
+	 * recognised, even one that was overwriting an older sample.
+	 */
+	static final int SEQUENCE = 52;
+	static final int SIZE = 56;
+
+	/** The check value of a slot being written, which no sample has. */
+	private static final int WRITING = 0;
+
+	private static final long SENSORS = StatusSnapshot.BUMPERS | StatusSnapshot.WHEEL_DROPS | StatusSnapshot.CLIFFS;
+
+	private final ByteBuffer buffer;
+	private int offset;
+	private long index;
+
+	TelemetryRecord(final ByteBuffer buffer) {
+
+		this.buffer = buffer;
+
+	}
+
+	TelemetryRecord at(final int offset, final long index) {
+
+		this.offset = offset;
+		this.index = index;
+
+		return this;
+
+	}
+
+	/**
+	 * Writes a snapshot into the record at the offset. Allocates nothing.
+	 */
+	static void write(final ByteBuffer buffer, final int offset, final long index, final StatusSnapshot snapshot) {
+
+		final CleanerState state = snapshot.cleanerState();
+
+		// Otherwise the older sample's check value would still pass for the
+		// slot's old index while its fields are half replaced.
+		buffer.putInt(offset + SEQUENCE, WRITING);
+		VarHandle.storeStoreFence();
+
+		buffer.putLong(offset + FETCHED_AT, snapshot.fetchedAt());
+		buffer.putLong(offset + SWITCHES, snapshot.switches());
+		buffer.putLong(offset + SWITCHES_KNOWN, snapshot.knownSwitches());
+		buffer.putInt(offset + VOLTAGE, snapshot.voltage());
+		buffer.putInt(offset + CURRENT, snapshot.current());
+		buffer.putInt(offset + TEMPERATURE, snapshot.temperature());
+		buffer.putInt(offset + BATTERY_CHARGE, snapshot.batteryCharge());
+		buffer.putInt(offset + CHARGE, snapshot.charge());
+		buffer.putInt(offset + CAPACITY, snapshot.capacity());
+		buffer.putInt(offset + STATE, state == null ? -1 : state.id());
+
+		VarHandle.storeStoreFence();
+		buffer.putInt(offset + SEQUENCE, sequence(index));
+
+	}
+
+	/** The check value stored with the sample at an index. */
+	static int sequence(final long index) {
+
+		final int sequence = (int) index + 1;
+
+		return sequence == WRITING ? 1 : sequence;
+
+	}
+
+	/** Whether the sample was written in full. */
+	boolean isComplete() {
+
+		return buffer.getInt(offset + SEQUENCE) == sequence(index);
+
+	}
+
+	/** The position of this sample among all those ever recorded. */
+	public long index() {
+
+		return index;
+
+	}
+
+	/** When the status was fetched, in milliseconds since the epoch. */
+	public long fetchedAt() {
+
+		return buffer.getLong(offset + FETCHED_AT);
+
+	}
+
+	public int voltage() {
+
+		return buffer.getInt(offset + VOLTAGE);
+
+	}
+
+	public int current() {
+
+		return buffer.getInt(offset + CURRENT);
+
+	}
+
+	public int temperature() {
+
+		return buffer.getInt(offset + TEMPERATURE);
+
+	}
+
+	public int batteryCharge() {
+
+		return buffer.getInt(offset + BATTERY_CHARGE);
+
+	}
+
+	public int charge() {
+
+		return buffer.getInt(offset + CHARGE);
+
+	}
+
+	public int capacity() {
+
+		return buffer.getInt(offset + CAPACITY);
+
+	}
+
+	/** The cleaner state, or null if the status did not report one. */
+	public CleanerState cleanerState() {
+
+		return CleanerState.byId(buffer.getInt(offset + STATE));
+
+	}
+
+	public boolean binFull() {
+
+		return is(StatusSnapshot.BIN_FULL);
+
+	}
+
+	public boolean isCleaning() {
+
+		return is(StatusSnapshot.CLEANING);
+
+	}
+
+	public boolean isLowOnPower() {
+
+		return is(StatusSnapshot.LOW_POWER);
+
+	}
+
+	public boolean isPressed(final Button button) {
+
+		return any(button.mask);
+
+	}
+
+	public boolean isPressed(final Bumper bumper) {
+
+		return any(bumper.mask);
+
+	}
+
+	public boolean hasDropped(final Wheel wheel) {
+
+		return any(wheel.mask);
+
+	}
+
+	public boolean detects(final Cliff cliff) {
+
+		return any(cliff.mask);
+
+	}
+
+	/**
+	 * Whether the sample included the sensors. Samples taken from the simple
+	 * status do not, and report them all as off.
+	 */
+	public boolean hasSensors() {
+
+		return (buffer.getLong(offset + SWITCHES_KNOWN) & SENSORS) != 0;
+
+	}
+
+	private boolean any(final long mask) {
+
+		return (buffer.getLong(offset + SWITCHES) & mask) != 0;
+
+	}
+
+	private boolean is(final int bit) {
+
+		return any(1L << bit);
+
+	}
+
+}
@@ -0,0 +1,285 @@
+package iRoomba;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a history of one Robot's power and sensor readings in a ring file.
+ * <p>
+ * The file holds a small header and a fixed number of fixed-width samples.
+ * It is memory-mapped, so a sample is written with a handful of stores and
+ * no allocation, and it is left in the page cache even if the process dies.
+ * Once the file is full the oldest samples are overwritten. Opening the file
+ * again carries on where the last recorder stopped.
+ * </p>
+ * <p>
+ * Each sample is written before the header counts it, and carries a check
+ * value that is cleared before the sample is written and set once it is
+ * whole, so a reader never takes a half-written sample for a real one, not
+ * even where it was overwriting an older one.
+ * </p>
+ *
+ * @see TelemetryRecord
+ */
+public final class TelemetryRecorder implements StatusListener, Closeable {
+
+	private static final int MAGIC = 0x54435452; // "TCTR"
+	private static final int FORMAT = 1;
+
+	// Layout of the header, in bytes \\
+	private static final int HEADER_MAGIC = 0;
+	private static final int HEADER_FORMAT = 4;
+	private static final int HEADER_RECORD_SIZE = 8;
+	private static final int HEADER_CAPACITY = 12;
+	/** The number of samples ever recorded. */
+	private static final int HEADER_COUNT = 16;
+	private static final int HEADER_SIZE = 64;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	/** Reused for every scan made while holding the lock. */
+	private final TelemetryRecord record;
+
+	/**
+	 * Guards the fields below. A lock rather than a monitor, so that a virtual
+	 * thread forcing the file out does not pin its carrier.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+	private long count;
+	private long lastVersion = -1;
+	private boolean closed = false;
+
+	private TelemetryRecorder(final Path file, final FileChannel channel, final MappedByteBuffer buffer,
+			final int capacity, final long count) {
+
+		this.file = file;
+		this.channel = channel;
+		this.buffer = buffer;
+		this.capacity = capacity;
+		this.count = count;
+		this.record = new TelemetryRecord(buffer);
+
+	}
+
+	/**
+	 * Opens a ring file, creating it if it does not exist.
+	 *
+	 * @param capacity
+	 *            The number of samples a new file holds. An existing file keeps
+	 *            the capacity it was created with.
+	 * @throws IOException
+	 *             If the file cannot be mapped or is not a telemetry file.
+	 */
+	public static TelemetryRecorder open(final Path file, final int capacity) throws IOException {
+
+		if (capacity <= 0 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / TelemetryRecord.SIZE) {
+			throw new IllegalArgumentException("Capacity out of range: " + capacity);
+		}
+
+		final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		try {
+			final long existing = channel.size();
+			final int slots;
+
+			if (existing == 0) {
+				slots = capacity;
+			} else {
+				if (existing < HEADER_SIZE) {
+					throw new IOException(file + " is not a telemetry file");
+				}
+				slots = (int) ((existing - HEADER_SIZE) / TelemetryRecord.SIZE);
+			}
+
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					HEADER_SIZE + (long) slots * TelemetryRecord.SIZE);
+
+			if (existing == 0) {
+				buffer.putInt(HEADER_FORMAT, FORMAT);
+				buffer.putInt(HEADER_RECORD_SIZE, TelemetryRecord.SIZE);
+				buffer.putInt(HEADER_CAPACITY, slots);
+				buffer.putLong(HEADER_COUNT, 0);
+				// The magic number goes in last, once the header is whole.
+				buffer.putInt(HEADER_MAGIC, MAGIC);
+			} else if (buffer.getInt(HEADER_MAGIC) != MAGIC || buffer.getInt(HEADER_FORMAT) != FORMAT
+					|| buffer.getInt(HEADER_RECORD_SIZE) != TelemetryRecord.SIZE
+					|| buffer.getInt(HEADER_CAPACITY) != slots) {
+				throw new IOException(file + " is not a telemetry file of format " + FORMAT);
+			}
+
+			return new TelemetryRecorder(file, channel, buffer, slots, buffer.getLong(HEADER_COUNT));
+		} catch (final IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+
+	}
+
+	/**
+	 * Records every status of the Robot fetched by the {@link StatusPoller#shared()
+	 * shared poller}, which is asked for the full status so that the power
+	 * readings and sensors are included.
+	 */
+	public Subscription record(final Robot robot) {
+
+		return StatusPoller.shared().subscribe(robot, this, StatusEndpoint.FULL);
+
+	}
+
+	@Override
+	public void onStatus(final Robot robot, final StatusSnapshot snapshot) {
+
+		if (snapshot != null) {
+			append(snapshot);
+		}
+
+	}
+
+	/**
+	 * Adds a sample, overwriting the oldest one if the file is full. A
+	 * snapshot that was already recorded is ignored, as are snapshots that
+	 * arrive after the recorder is closed.
+	 */
+	public void append(final StatusSnapshot snapshot) {
+
+		lock.lock();
+		try {
+			if (closed || snapshot.version() == lastVersion) {
+				return;
+			}
+
+			TelemetryRecord.write(buffer, offset(count), count, snapshot);
+			count++;
+			buffer.putLong(HEADER_COUNT, count);
+			lastVersion = snapshot.version();
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Passes the samples still in the file to the visitor, oldest first. The
+	 * record handed over reads straight from the file and is reused for the
+	 * next sample.
+	 */
+	public void scan(final Consumer<? super TelemetryRecord> visitor) {
+
+		scan(0, visitor);
+
+	}
+
+	/**
+	 * Passes the samples fetched at or after a time to the visitor, oldest
+	 * first.
+	 */
+	public void scan(final long since, final Consumer<? super TelemetryRecord> visitor) {
+
+		lock.lock();
+		try {
+			for (long index = first(); index < count; index++) {
+				record.at(offset(index), index);
+				if (record.isComplete() && record.fetchedAt() >= since) {
+					visitor.accept(record);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/** The number of samples in the file now. */
+	public int size() {
+
+		lock.lock();
+		try {
+			return (int) (count - first());
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/** The number of samples ever recorded in the file. */
+	public long count() {
+
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	public int capacity() {
+
+		return capacity;
+
+	}
+
+	public Path file() {
+
+		return file;
+
+	}
+
+	/**
+	 * Writes the file out to the disk. Samples already survive the process
+	 * ending without this; it is only needed to survive the machine going
+	 * down.
+	 */
+	public void force() {
+
+		lock.lock();
+		try {
+			if (!closed) {
+				buffer.force();
+			}
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+			buffer.force();
+			channel.close();
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	private long first() {
+
+		return Math.max(0, count - capacity);
+
+	}
+
+	private int offset(final long index) {
+
+		return HEADER_SIZE + (int) (index % capacity) * TelemetryRecord.SIZE;
+
+	}
+
+}
@@ -0,0 +1,598 @@
+package iRoomba;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The telemetry of one Robot in a {@link TelemetryStore}: a data file of
+ * column blocks and a sparse index of the time each block covers.
+ * <p>
+ * Rows are collected in memory and written as a block of up to
+ * {@link #BLOCK_ROWS}. Within a block every column is stored on its own as
+ * its first value followed by the differences between neighbouring values,
+ * zigzag-encoded and bit-packed to the width the largest difference needs.
+ * Readings change slowly, so most columns take a few bits a row and the
+ * times take little more than the bits of the poll interval. The block
+ * header holds the minimum and maximum of each column.
+ * </p>
+ * <p>
+ * The index has one fixed-size entry per block and is kept in memory. A
+ * query finds the first block it needs by binary search and reads only the
+ * blocks overlapping its time range, and of those only the columns it needs.
+ * </p>
+ */
+final class TelemetrySeries implements Closeable {
+
+	/** The most rows a block holds. */
+	static final int BLOCK_ROWS = 1024;
+
+	private static final int DATA_MAGIC = 0x54435344; // "TCSD"
+	private static final int INDEX_MAGIC = 0x54435349; // "TCSI"
+	private static final int FORMAT = 1;
+	private static final int FILE_HEADER = 8;
+
+	private static final int COLUMNS = TelemetryColumn.COLUMNS.length;
+
+	// Layout of a block header \\
+	/** Magic number and row count. */
+	private static final int BLOCK_START = 8;
+	/** Minimum, maximum, first value, bit width and byte length. */
+	private static final int COLUMN_HEADER = 8 + 8 + 8 + 1 + 4;
+	private static final int BLOCK_HEADER = BLOCK_START + COLUMNS * COLUMN_HEADER;
+
+	/** First time, last time, offset, length and rows. */
+	private static final int INDEX_ENTRY = 8 + 8 + 8 + 4 + 4;
+
+	private final FileChannel data;
+	private final FileChannel index;
+	/**
+	 * Guards everything below. A lock rather than a monitor, so that a virtual
+	 * thread reading or writing the files does not pin its carrier.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// The sparse index \\
+	private int blocks = 0;
+	private long[] firstTimes = new long[16];
+	private long[] lastTimes = new long[16];
+	private long[] offsets = new long[16];
+	private long end = FILE_HEADER;
+
+	// Rows not yet written, by column \\
+	private final long[][] pending = new long[COLUMNS][BLOCK_ROWS];
+	private int pendingRows = 0;
+	private long lastVersion = -1;
+
+	// Reused while reading and writing \\
+	private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+	private final ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY);
+	private ByteBuffer column = ByteBuffer.allocate(BLOCK_ROWS * 8);
+	private final long[] times = new long[BLOCK_ROWS];
+	private final long[] values = new long[BLOCK_ROWS];
+
+	private long blocksRead = 0;
+
+	private TelemetrySeries(final FileChannel data, final FileChannel index) {
+
+		this.data = data;
+		this.index = index;
+
+	}
+
+	/**
+	 * Opens the files of a series, creating them if they do not exist. A block
+	 * the index does not account for, such as one cut off by a crash, is
+	 * dropped.
+	 */
+	static TelemetrySeries open(final Path dataFile, final Path indexFile) throws IOException {
+
+		final FileChannel data = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		FileChannel index = null;
+
+		try {
+			index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			final TelemetrySeries series = new TelemetrySeries(data, index);
+			series.load(dataFile);
+			return series;
+		} catch (final IOException | RuntimeException e) {
+			data.close();
+			if (index != null) {
+				index.close();
+			}
+			throw e;
+		}
+
+	}
+
+	private void load(final Path dataFile) throws IOException {
+
+		if (data.size() == 0) {
+			writeFileHeader(data, DATA_MAGIC);
+			writeFileHeader(index, INDEX_MAGIC);
+			return;
+		}
+
+		checkFileHeader(data, DATA_MAGIC, dataFile);
+		checkFileHeader(index, INDEX_MAGIC, dataFile);
+
+		final long size = data.size();
+		final long entries = (index.size() - FILE_HEADER) / INDEX_ENTRY;
+
+		for (long i = 0; i < entries; i++) {
+			readFully(index, entry, FILE_HEADER + i * INDEX_ENTRY);
+			final long offset = entry.getLong(16);
+			final int length = entry.getInt(24);
+			if (offset != end || offset + length > size) {
+				break;
+			}
+			addToIndex(entry.getLong(0), entry.getLong(8), offset, length);
+		}
+
+		// Drop whatever came after the last whole block.
+		index.truncate(FILE_HEADER + (long) blocks * INDEX_ENTRY);
+		data.truncate(end);
+
+	}
+
+	/**
+	 * Adds a row. Rows older than the last one, and snapshots already added,
+	 * are ignored.
+	 *
+	 * @return Whether the row was added.
+	 */
+	boolean append(final StatusSnapshot snapshot) throws IOException {
+
+		lock.lock();
+		try {
+			final long time = snapshot.fetchedAt();
+
+			if (snapshot.version() == lastVersion || time < lastTime()) {
+				return false;
+			}
+
+			for (final TelemetryColumn c : TelemetryColumn.COLUMNS) {
+				pending[c.ordinal()][pendingRows] = c.of(snapshot);
+			}
+			pendingRows++;
+			lastVersion = snapshot.version();
+
+			if (pendingRows == BLOCK_ROWS) {
+				flush();
+			}
+
+			return true;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Writes the rows collected so far as a block, even if it is not full.
+	 */
+	void flush() throws IOException {
+
+		lock.lock();
+		try {
+			if (pendingRows == 0) {
+				return;
+			}
+
+			final int rows = pendingRows;
+			int length = BLOCK_HEADER;
+			for (int c = 0; c < COLUMNS; c++) {
+				length += packedLength(rows, width(pending[c], rows));
+			}
+
+			final ByteBuffer block = ByteBuffer.allocate(length);
+			block.putInt(DATA_MAGIC).putInt(rows);
+
+			final int[] widths = new int[COLUMNS];
+			for (int c = 0; c < COLUMNS; c++) {
+				final long[] column = pending[c];
+				long min = column[0];
+				long max = column[0];
+				for (int i = 1; i < rows; i++) {
+					min = Math.min(min, column[i]);
+					max = Math.max(max, column[i]);
+				}
+				widths[c] = width(column, rows);
+				block.putLong(min).putLong(max).putLong(column[0]).put((byte) widths[c])
+						.putInt(packedLength(rows, widths[c]));
+			}
+
+			for (int c = 0; c < COLUMNS; c++) {
+				pack(pending[c], rows, widths[c], block);
+			}
+
+			block.flip();
+			final long offset = end;
+			writeFully(data, block, offset);
+
+			// The index entry goes in only once the block is on file.
+			final long[] time = pending[TelemetryColumn.TIME.ordinal()];
+			entry.clear();
+			entry.putLong(time[0]).putLong(time[rows - 1]).putLong(offset).putInt(length).putInt(rows).flip();
+			writeFully(index, entry, FILE_HEADER + (long) blocks * INDEX_ENTRY);
+			addToIndex(time[0], time[rows - 1], offset, length);
+			pendingRows = 0;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * Passes the values of a column between two times, both included, to the
+	 * visitor in time order.
+	 */
+	void query(final TelemetryColumn column, final long from, final long to,
+			final TelemetryVisitor visitor) throws IOException {
+
+		lock.lock();
+		try {
+			for (int b = firstBlock(from); b < blocks && firstTimes[b] <= to; b++) {
+				final int rows = readHeader(b);
+				decode(b, TelemetryColumn.TIME, rows, times);
+				if (column != TelemetryColumn.TIME) {
+					decode(b, column, rows, values);
+				}
+				final long[] found = column == TelemetryColumn.TIME ? times : values;
+				for (int i = 0; i < rows; i++) {
+					if (times[i] >= from && times[i] <= to) {
+						visitor.visit(times[i], found[i]);
+					}
+				}
+			}
+
+			final long[] pendingTimes = pending[TelemetryColumn.TIME.ordinal()];
+			for (int i = 0; i < pendingRows; i++) {
+				if (pendingTimes[i] >= from && pendingTimes[i] <= to) {
+					visitor.visit(pendingTimes[i], pending[column.ordinal()][i]);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/**
+	 * The smallest and largest value of a column between two times, or null if
+	 * there were no rows. Blocks that lie wholly inside the range are answered
+	 * from their headers without decoding them.
+	 */
+	long[] range(final TelemetryColumn column, final long from, final long to) throws IOException {
+
+		lock.lock();
+		try {
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			boolean any = false;
+
+			for (int b = firstBlock(from); b < blocks && firstTimes[b] <= to; b++) {
+				final int rows = readHeader(b);
+				if (firstTimes[b] >= from && lastTimes[b] <= to) {
+					final int at = BLOCK_START + column.ordinal() * COLUMN_HEADER;
+					min = Math.min(min, header.getLong(at));
+					max = Math.max(max, header.getLong(at + 8));
+					any = true;
+					continue;
+				}
+				decode(b, TelemetryColumn.TIME, rows, times);
+				decode(b, column, rows, values);
+				for (int i = 0; i < rows; i++) {
+					if (times[i] >= from && times[i] <= to) {
+						final long value = column == TelemetryColumn.TIME ? times[i] : values[i];
+						min = Math.min(min, value);
+						max = Math.max(max, value);
+						any = true;
+					}
+				}
+			}
+
+			final long[] pendingTimes = pending[TelemetryColumn.TIME.ordinal()];
+			for (int i = 0; i < pendingRows; i++) {
+				if (pendingTimes[i] >= from && pendingTimes[i] <= to) {
+					min = Math.min(min, pending[column.ordinal()][i]);
+					max = Math.max(max, pending[column.ordinal()][i]);
+					any = true;
+				}
+			}
+
+			return any ? new long[] { min, max } : null;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/** The number of rows, written or not. */
+	long rows() throws IOException {
+
+		lock.lock();
+		try {
+			long rows = pendingRows;
+			for (int b = 0; b < blocks; b++) {
+				readFully(index, entry, FILE_HEADER + (long) b * INDEX_ENTRY);
+				rows += entry.getInt(28);
+			}
+
+			return rows;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	int blocks() {
+
+		lock.lock();
+		try {
+			return blocks;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/** The number of blocks queries have read so far. */
+	long blocksRead() {
+
+		lock.lock();
+		try {
+			return blocksRead;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/** The bytes the data file takes up. */
+	long bytes() {
+
+		lock.lock();
+		try {
+			return end;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		lock.lock();
+		try {
+			try {
+				flush();
+				data.force(false);
+				index.force(false);
+			} finally {
+				data.close();
+				index.close();
+			}
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	private long lastTime() {
+
+		if (pendingRows > 0) {
+			return pending[TelemetryColumn.TIME.ordinal()][pendingRows - 1];
+		}
+
+		return blocks == 0 ? Long.MIN_VALUE : lastTimes[blocks - 1];
+
+	}
+
+	/** The first block that ends at or after a time. */
+	private int firstBlock(final long from) {
+
+		int low = 0;
+		int high = blocks;
+
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (lastTimes[middle] < from) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+
+	}
+
+	private void addToIndex(final long firstTime, final long lastTime, final long offset, final int length) {
+
+		if (blocks == firstTimes.length) {
+			firstTimes = Arrays.copyOf(firstTimes, blocks * 2);
+			lastTimes = Arrays.copyOf(lastTimes, blocks * 2);
+			offsets = Arrays.copyOf(offsets, blocks * 2);
+		}
+
+		firstTimes[blocks] = firstTime;
+		lastTimes[blocks] = lastTime;
+		offsets[blocks] = offset;
+		blocks++;
+		end = offset + length;
+
+	}
+
+	/**
+	 * Reads the header of a block into {@link #header}.
+	 *
+	 * @return The number of rows in the block.
+	 */
+	private int readHeader(final int block) throws IOException {
+
+		blocksRead++;
+		readFully(data, header, offsets[block]);
+
+		if (header.getInt(0) != DATA_MAGIC) {
+			throw new IOException("Corrupt telemetry block at " + offsets[block]);
+		}
+
+		return header.getInt(4);
+
+	}
+
+	/**
+	 * Reads and unpacks one column of the block whose header was read last.
+	 */
+	private void decode(final int block, final TelemetryColumn c, final int rows, final long[] into)
+			throws IOException {
+
+		long position = offsets[block] + BLOCK_HEADER;
+		for (int i = 0; i < c.ordinal(); i++) {
+			position += header.getInt(BLOCK_START + i * COLUMN_HEADER + 25);
+		}
+
+		final int at = BLOCK_START + c.ordinal() * COLUMN_HEADER;
+		final long first = header.getLong(at + 16);
+		final int width = header.get(at + 24);
+		final int length = header.getInt(at + 25);
+
+		if (column.capacity() < length) {
+			column = ByteBuffer.allocate(length);
+		}
+		column.clear().limit(length);
+		readRemaining(data, column, position);
+		column.flip();
+
+		into[0] = first;
+		long bit = 0;
+		for (int i = 1; i < rows; i++) {
+			long zigzag = 0;
+			for (int done = 0; done < width;) {
+				final int offset = (int) (bit & 7);
+				final int take = Math.min(8 - offset, width - done);
+				final long bits = (column.get((int) (bit >>> 3)) >>> offset) & ((1 << take) - 1);
+				zigzag |= bits << done;
+				done += take;
+				bit += take;
+			}
+			into[i] = into[i - 1] + ((zigzag >>> 1) ^ -(zigzag & 1));
+		}
+
+	}
+
+	/** The bits needed for the largest zigzag-encoded difference. */
+	private static int width(final long[] column, final int rows) {
+
+		long all = 0;
+		for (int i = 1; i < rows; i++) {
+			all |= zigzag(column[i] - column[i - 1]);
+		}
+
+		return 64 - Long.numberOfLeadingZeros(all);
+
+	}
+
+	private static long zigzag(final long delta) {
+
+		return (delta << 1) ^ (delta >> 63);
+
+	}
+
+	private static int packedLength(final int rows, final int width) {
+
+		return (int) (((long) (rows - 1) * width + 7) >>> 3);
+
+	}
+
+	/**
+	 * Writes the differences of a column, bit-packed, at the position of the
+	 * buffer and moves it past them.
+	 */
+	private static void pack(final long[] column, final int rows, final int width, final ByteBuffer out) {
+
+		final int start = out.position();
+		long bit = 0;
+
+		for (int i = 1; i < rows; i++) {
+			final long zigzag = zigzag(column[i] - column[i - 1]);
+			for (int done = 0; done < width;) {
+				final int offset = (int) (bit & 7);
+				final int take = Math.min(8 - offset, width - done);
+				final int at = start + (int) (bit >>> 3);
+				final int bits = (int) ((zigzag >>> done) & ((1 << take) - 1));
+				out.put(at, (byte) (out.get(at) | bits << offset));
+				done += take;
+				bit += take;
+			}
+		}
+
+		out.position(start + packedLength(rows, width));
+
+	}
+
+	private static void writeFileHeader(final FileChannel channel, final int magic) throws IOException {
+
+		final ByteBuffer buffer = ByteBuffer.allocate(FILE_HEADER);
+		buffer.putInt(magic).putInt(FORMAT).flip();
+		writeFully(channel, buffer, 0);
+
+	}
+
+	private static void checkFileHeader(final FileChannel channel, final int magic, final Path file)
+			throws IOException {
+
+		final ByteBuffer buffer = ByteBuffer.allocate(FILE_HEADER);
+		readFully(channel, buffer, 0);
+
+		if (buffer.getInt(0) != magic || buffer.getInt(4) != FORMAT) {
+			throw new IOException(file + " is not a telemetry store of format " + FORMAT);
+		}
+
+	}
+
+	/** Fills the buffer from a position, and flips it for reading. */
+	private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+			throws IOException {
+
+		buffer.clear();
+		readRemaining(channel, buffer, position);
+		buffer.flip();
+
+	}
+
+	private static void readRemaining(final FileChannel channel, final ByteBuffer buffer, final long position)
+			throws IOException {
+
+		long at = position;
+		while (buffer.hasRemaining()) {
+			final int read = channel.read(buffer, at);
+			if (read < 0) {
+				throw new EOFException("Telemetry file ends at " + at);
+			}
+			at += read;
+		}
+
+	}
+
+	private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+			throws IOException {
+
+		long at = position;
+		while (buffer.hasRemaining()) {
+			at += channel.write(buffer, at);
+		}
+
+	}
+
+}
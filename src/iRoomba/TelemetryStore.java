@@ -0,0 +1,230 @@
+package iRoomba;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Long-term telemetry of many Robots, stored column by column.
+ * <p>
+ * Each Robot, known by its address, has a data file and an index file in
+ * the store's directory. Rows are gathered into blocks of
+ * {@value TelemetrySeries#BLOCK_ROWS}, in which every column is delta- and
+ * bit-packed separately and summarised by its minimum and maximum. A sparse
+ * index of the time each block covers lets a query such as "the voltage of
+ * one Robot between two times" read only the blocks that overlap the range.
+ * A month of full statuses polled every ten seconds takes about a megabyte
+ * rather than the 300 MB of JSON it came from.
+ * </p>
+ * <p>
+ * Rows are only written once a block is full, on {@link #flush()} or on
+ * {@link #close()}; queries see the unwritten rows as well.
+ * </p>
+ */
+public final class TelemetryStore implements Closeable {
+
+	private final Path directory;
+	/**
+	 * Guards the fields below. A lock rather than a monitor, since series are
+	 * opened while holding it and the poller may run on virtual threads.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Map<String, TelemetrySeries> series = new HashMap<String, TelemetrySeries>();
+	private boolean closed = false;
+
+	private TelemetryStore(final Path directory) {
+
+		this.directory = directory;
+
+	}
+
+	/**
+	 * Opens a store in a directory, creating the directory if needed.
+	 */
+	public static TelemetryStore open(final Path directory) throws IOException {
+
+		Files.createDirectories(directory);
+
+		return new TelemetryStore(directory);
+
+	}
+
+	/**
+	 * Stores every status of the Robot fetched by the {@link StatusPoller#shared()
+	 * shared poller}, which is asked for the full status so that every column
+	 * is filled in. Statuses that cannot be stored are left out.
+	 */
+	public Subscription record(final Robot robot) {
+
+		return StatusPoller.shared().subscribe(robot, new StatusListener() {
+
+			@Override
+			public void onStatus(final Robot robot, final StatusSnapshot snapshot) {
+
+				if (snapshot == null) {
+					return;
+				}
+				try {
+					append(robot.ip, snapshot);
+				} catch (final IOException | IllegalStateException e) {
+					// The poll goes on; the row is lost.
+				}
+
+			}
+
+		}, StatusEndpoint.FULL);
+
+	}
+
+	/**
+	 * Adds a row for the Robot at an address. Rows older than the Robot's
+	 * last row are ignored.
+	 *
+	 * @return Whether the row was added.
+	 */
+	public boolean append(final String ip, final StatusSnapshot snapshot) throws IOException {
+
+		return series(ip).append(snapshot);
+
+	}
+
+	/**
+	 * Passes the values of a column for the Robot at an address between two
+	 * times, both included, to the visitor in time order.
+	 */
+	public void query(final String ip, final TelemetryColumn column, final long from, final long to,
+			final TelemetryVisitor visitor) throws IOException {
+
+		series(ip).query(column, from, to, visitor);
+
+	}
+
+	public void query(final Robot robot, final TelemetryColumn column, final long from, final long to,
+			final TelemetryVisitor visitor) throws IOException {
+
+		query(robot.ip, column, from, to, visitor);
+
+	}
+
+	/**
+	 * The smallest and largest value of a column for the Robot at an address
+	 * between two times, as a pair, or null if there were no rows. Blocks
+	 * lying wholly inside the range are answered from their summaries.
+	 */
+	public long[] range(final String ip, final TelemetryColumn column, final long from, final long to)
+			throws IOException {
+
+		return series(ip).range(column, from, to);
+
+	}
+
+	/** The number of rows stored for the Robot at an address. */
+	public long rows(final String ip) throws IOException {
+
+		return series(ip).rows();
+
+	}
+
+	/**
+	 * The number of blocks queries on the Robot at an address have read, for
+	 * checking that a query only touched what it needed.
+	 */
+	public long blocksRead(final String ip) throws IOException {
+
+		return series(ip).blocksRead();
+
+	}
+
+	/** The bytes stored for the Robot at an address. */
+	public long bytes(final String ip) throws IOException {
+
+		return series(ip).bytes();
+
+	}
+
+	/** Writes out the rows every Robot has gathered so far. */
+	public void flush() throws IOException {
+
+		lock.lock();
+		try {
+			for (final TelemetrySeries s : series.values()) {
+				s.flush();
+			}
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+			IOException failure = null;
+
+			for (final TelemetrySeries s : series.values()) {
+				try {
+					s.close();
+				} catch (final IOException e) {
+					failure = e;
+				}
+			}
+			series.clear();
+
+			if (failure != null) {
+				throw failure;
+			}
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	private TelemetrySeries series(final String ip) throws IOException {
+
+		lock.lock();
+		try {
+			if (closed) {
+				throw new IllegalStateException("Telemetry store is closed");
+			}
+
+			TelemetrySeries found = series.get(ip);
+
+			if (found == null) {
+				final String file = fileName(ip);
+				found = TelemetrySeries.open(directory.resolve(file + ".tcs"), directory.resolve(file + ".tci"));
+				series.put(ip, found);
+			}
+
+			return found;
+		} finally {
+			lock.unlock();
+		}
+
+	}
+
+	/** An address turned into something safe to use as a file name. */
+	private static String fileName(final String ip) {
+
+		final StringBuilder name = new StringBuilder(ip.length());
+
+		for (int i = 0; i < ip.length(); i++) {
+			final char c = ip.charAt(i);
+			name.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+		}
+
+		return name.toString();
+
+	}
+
+}
@@ -0,0 +1,10 @@
+package iRoomba;
+
+/**
+ * Receives the values a {@link TelemetryStore} query finds, oldest first.
+ */
+public interface TelemetryVisitor {
+
+	void visit(long time, long value);
+
+}
@@ -1,6 +1,8 @@
 package iRoomba;
 
 
+import java.io.IOException;
+
 import iRoomba.Robot;
 
 
@@ -60,9 +62,17 @@ public class Test {
 
 	
 
-	public static void main(String[] args) throws InterruptedException {
+	public static void main(String[] args) throws InterruptedException, IOException {
+		
+		// Pass the address of a module, or "simulate" to run against a
+		// simulated one.
+		String address = args.length > 0 ? args[0] : "192.168.1.100";
+		if (address.equals("simulate")) {
+			DeviceSimulator simulator = new DeviceSimulator();
+			address = simulator.address(simulator.add("Jim").name());
+		}
 		
-		Robot Jim = new Robot("192.168.1.100");
+		Robot Jim = new Robot(address);
 /*		Jim.mode("cautious");
 		Jim.vacuum("off");
 		
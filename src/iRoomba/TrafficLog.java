@@ -0,0 +1,177 @@
+package iRoomba;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary log written by {@link RecordingTransport} and read by
+ * {@link ReplayTransport}.
+ * <p>
+ * The log starts with a magic number, the format and the wall clock time
+ * the recording started at. Each exchange after that holds, as variable
+ * length numbers, the nanoseconds from the start of the recording to the
+ * request and the nanoseconds it took, then the path and the outcome. A path
+ * is written out the first time it is used and referred to by number after
+ * that. A body the same as the last one for its path, which is most command
+ * responses, is not written again.
+ * </p>
+ */
+final class TrafficLog {
+
+	static final int MAGIC = 0x5443524C; // "TCRL"
+	static final int FORMAT = 1;
+
+	// Outcomes \\
+	static final int BODY = 0;
+	static final int SAME_BODY = 1;
+	static final int FAILURE = 2;
+
+	private TrafficLog() {
+	}
+
+	/**
+	 * One request and what came back.
+	 */
+	static final class Exchange {
+
+		/** Nanoseconds from the start of the recording to the request. */
+		final long at;
+		final long duration;
+		final String path;
+		/** The body, or null if the request failed. */
+		final byte[] body;
+		/** Why the request failed, or null. */
+		final String failure;
+
+		Exchange(final long at, final long duration, final String path, final byte[] body, final String failure) {
+
+			this.at = at;
+			this.duration = duration;
+			this.path = path;
+			this.body = body;
+			this.failure = failure;
+
+		}
+
+	}
+
+	/**
+	 * Reads every exchange in a log, in the order they were written. A log
+	 * cut off part way through an exchange, as it is if the recording process
+	 * died, ends at the last whole one.
+	 */
+	static List<Exchange> read(final Path file) throws IOException {
+
+		final List<Exchange> exchanges = new ArrayList<Exchange>();
+
+		try (InputStream stream = new BufferedInputStream(Files.newInputStream(file))) {
+			final DataInputStream in = new DataInputStream(stream);
+
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+				throw new IOException(file + " is not a traffic log of format " + FORMAT);
+			}
+			in.readLong();
+
+			final List<String> paths = new ArrayList<String>();
+			final List<byte[]> lastBodies = new ArrayList<byte[]>();
+
+			while (true) {
+				final long at;
+				try {
+					at = readNumber(in);
+				} catch (final EOFException e) {
+					break;
+				}
+
+				try {
+					final long duration = readNumber(in);
+					final int id = (int) readNumber(in);
+					if (id == paths.size()) {
+						paths.add(readString(in));
+						lastBodies.add(null);
+					} else if (id > paths.size()) {
+						throw new IOException("Corrupt traffic log: unknown path " + id);
+					}
+					final String path = paths.get(id);
+
+					final int outcome = in.readUnsignedByte();
+					if (outcome == FAILURE) {
+						exchanges.add(new Exchange(at, duration, path, null, readString(in)));
+						continue;
+					}
+
+					final byte[] body;
+					if (outcome == SAME_BODY) {
+						body = lastBodies.get(id);
+					} else {
+						body = new byte[(int) readNumber(in)];
+						in.readFully(body);
+						lastBodies.set(id, body);
+					}
+					exchanges.add(new Exchange(at, duration, path, body, null));
+				} catch (final EOFException e) {
+					break;
+				}
+			}
+		}
+
+		return exchanges;
+
+	}
+
+	static void writeNumber(final DataOutput out, final long value) throws IOException {
+
+		long rest = value;
+
+		while ((rest & ~0x7FL) != 0) {
+			out.writeByte((int) (rest & 0x7F) | 0x80);
+			rest >>>= 7;
+		}
+		out.writeByte((int) rest);
+
+	}
+
+	static long readNumber(final DataInput in) throws IOException {
+
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Corrupt traffic log: number too long");
+
+	}
+
+	static void writeString(final DataOutput out, final String value) throws IOException {
+
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeNumber(out, bytes.length);
+		out.write(bytes);
+
+	}
+
+	private static String readString(final DataInput in) throws IOException {
+
+		final byte[] bytes = new byte[(int) readNumber(in)];
+		in.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+
+	}
+
+}
@@ -0,0 +1,33 @@
+package iRoomba;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Carries HTTP requests from a Robot to its Thinking Cleaner device.
+ * <p>
+ * Every path handed to a Transport is relative to the device root, such as
+ * "/status.json" or "/command.json?command=dock".
+ * </p>
+ */
+public interface Transport extends Closeable {
+
+	/**
+	 * Performs a GET request against the device.
+	 *
+	 * @param path
+	 *            The path of the request, starting with a '/'.
+	 * @return The body of the response.
+	 * @throws IOException
+	 *             If the device could not be reached or answered with an
+	 *             error status.
+	 */
+	byte[] get(String path) throws IOException;
+
+	/**
+	 * Releases any connections held by this Transport.
+	 */
+	@Override
+	void close();
+
+}
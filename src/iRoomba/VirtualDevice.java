@@ -0,0 +1,559 @@
+package iRoomba;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A pretend Thinking Cleaner module with a Roomba attached.
+ * <p>
+ * It answers the same requests the real module does and moves through the
+ * same st_* cleaner states: commands start and stop cleaning, docking and
+ * remote driving, the battery drains while away from the homebase and
+ * charges on it. Sensors stay clear unless set with
+ * {@link #setSensor(String, boolean)}.
+ * </p>
+ * <p>
+ * Devices are usually hosted by a {@link DeviceSimulator}, but can be used on
+ * their own through {@link #handle(String)}.
+ * </p>
+ */
+public class VirtualDevice {
+
+	/** Percent of charge lost per second while cleaning, about 90 minutes. */
+	private static final double CLEANING_DRAIN = 100.0 / (90 * 60);
+	/** Percent of charge lost per second while idle away from home. */
+	private static final double IDLE_DRAIN = CLEANING_DRAIN / 10;
+	/** Percent of charge gained per second on the homebase, about 3 hours. */
+	private static final double CHARGE_RATE = 100.0 / (3 * 60 * 60);
+	/** Seconds it takes to find the homebase. */
+	private static final double DOCKING_TIME = 20;
+	/** Seconds without a drive command before remote driving stops. */
+	private static final double REMOTE_TIMEOUT = 1;
+
+	private final String name;
+	private final double timeScale;
+
+	private String state = "st_base";
+	private double charge = 100;
+	/** Seconds spent in the current state. */
+	private double inState = 0;
+	private long lastTick;
+	private double cleaningTime = 0;
+	private double cleaningTimeTotal = 0;
+	private int delayMinutes = 0;
+
+	private final Map<String, Object> firmware = new LinkedHashMap<String, Object>();
+	private final Map<String, Object> tcStatus = new LinkedHashMap<String, Object>();
+	private final Map<String, Object> powerStatus = new LinkedHashMap<String, Object>();
+	private final Map<String, Object> buttons = new LinkedHashMap<String, Object>();
+	private final Map<String, Object> sensors = new LinkedHashMap<String, Object>();
+	private final Map<String, Object> webview = new LinkedHashMap<String, Object>();
+
+	public VirtualDevice(final String name) {
+
+		this(name, 1.0);
+
+	}
+
+	/**
+	 * @param name
+	 *            The name the device reports.
+	 * @param timeScale
+	 *            How many simulated seconds pass per real second, to watch a
+	 *            cleaning cycle without waiting for it.
+	 */
+	public VirtualDevice(final String name, final double timeScale) {
+
+		this.name = name;
+		this.timeScale = timeScale;
+		this.lastTick = System.nanoTime();
+
+		final String suffix = String.format("%06x", name.hashCode() & 0xFFFFFF);
+
+		firmware.put("version", "4.30");
+		firmware.put("boot_version", "1.2");
+		firmware.put("wifi_version", "4.0.1");
+		firmware.put("uuid", "00000000-0000-0000-0000-000000" + suffix);
+		firmware.put("mac_address", "00:1e:c0:" + suffix.substring(0, 2) + ':' + suffix.substring(2, 4) + ':'
+				+ suffix.substring(4, 6));
+		firmware.put("DHCP", 1);
+		firmware.put("has_been_backed_up", 0);
+		firmware.put("has_auth_token", 0);
+		firmware.put("boot_status", "OK");
+		firmware.put("auto_update", 1);
+		firmware.put("auto_dock", 1);
+		firmware.put("restart_AC", 0);
+		firmware.put("dock_at", 25);
+		firmware.put("stop_at", 10);
+		firmware.put("time_h_m", "00:00");
+
+		tcStatus.put("name", name);
+		tcStatus.put("modelnr", "TC-1");
+		tcStatus.put("cleaning_time", 0);
+		tcStatus.put("cleaning_time_total", 0);
+		tcStatus.put("cleaning_distance", 0);
+		tcStatus.put("dirt_detected", 0);
+		tcStatus.put("bin_status", 0);
+		tcStatus.put("server_connection", 1);
+		tcStatus.put("vacuum_drive", 0);
+		tcStatus.put("clean_delay", 0);
+		tcStatus.put("schedule_serial_number", 1);
+
+		powerStatus.put("cleaner_state", state);
+		powerStatus.put("cleaning", 0);
+		powerStatus.put("low_power", 0);
+		powerStatus.put("charge", 100);
+		powerStatus.put("battery_charge", 2696);
+		powerStatus.put("capacity", 2696);
+		powerStatus.put("current", 0);
+		powerStatus.put("voltage", 16800);
+		powerStatus.put("temperature", 25);
+
+		buttons.put("clean_button", 0);
+		buttons.put("spot_button", 0);
+		buttons.put("dock_button", 0);
+
+		for (final String sensor : new String[] { "bumper_state", "bumper_left_state", "bumper_right_state",
+				"wheel_drop_left", "wheel_drop_right", "wall", "virtual_wall", "cliff_left", "cliff_front_left",
+				"cliff_front_right", "cliff_right", "dirt_detect", "light_bump", "mainbrush_current",
+				"sidebrush_current", "homebase_detected", "near_homebase" }) {
+			sensors.put(sensor, 0);
+		}
+		sensors.put("IR_Omni", 0);
+		sensors.put("IR_Left", 0);
+		sensors.put("IR_Right", 0);
+
+		webview.put("advanced", "0");
+
+		refreshDerived();
+
+	}
+
+	public String name() {
+
+		return name;
+
+	}
+
+	public synchronized String cleanerState() {
+
+		tick();
+
+		return state;
+
+	}
+
+	public synchronized int charge() {
+
+		tick();
+
+		return (int) charge;
+
+	}
+
+	public synchronized void setCharge(final int percent) {
+
+		tick();
+		charge = Math.max(0, Math.min(100, percent));
+		refreshDerived();
+
+	}
+
+	/**
+	 * Sets a sensor or button, such as "bumper_state", "cliff_front_left" or
+	 * "dock_button".
+	 */
+	public synchronized void setSensor(final String sensor, final boolean on) {
+
+		if (buttons.containsKey(sensor)) {
+			buttons.put(sensor, on ? 1 : 0);
+		} else if (sensors.containsKey(sensor)) {
+			sensors.put(sensor, on ? 1 : 0);
+		} else {
+			throw new IllegalArgumentException("Unknown sensor " + sensor);
+		}
+
+	}
+
+	/**
+	 * Sets one of the infrared readings: "IR_Omni", "IR_Left" or "IR_Right".
+	 */
+	public synchronized void setIRReading(final String sensor, final int value) {
+
+		if (!sensor.startsWith("IR_") || !sensors.containsKey(sensor)) {
+			throw new IllegalArgumentException("Unknown infrared sensor " + sensor);
+		}
+
+		sensors.put(sensor, value);
+
+	}
+
+	/**
+	 * Answers a request the way the module would.
+	 *
+	 * @param path
+	 *            The path of the request, such as "/status.json" or
+	 *            "/command.json?command=clean".
+	 * @return The JSON body of the response, or null if the device has no such
+	 *         page.
+	 */
+	public synchronized byte[] handle(final String path) {
+
+		tick();
+
+		final String page;
+		final String query;
+		final int question = path.indexOf('?');
+		if (question >= 0) {
+			page = path.substring(0, question);
+			query = path.substring(question + 1);
+		} else {
+			page = path;
+			query = "";
+		}
+
+		final String body;
+
+		switch (page) {
+		case "/status.json":
+			body = simpleStatus();
+			break;
+
+		case "/full_status.json":
+			body = fullStatus();
+			break;
+
+		case "/command.json":
+			body = command(query);
+			break;
+
+		default:
+			return null;
+		}
+
+		return body.getBytes(StandardCharsets.UTF_8);
+
+	}
+
+	// State Machine \\
+	private String command(final String query) {
+
+		final String command = parameter(query, "command");
+
+		if (command == null) {
+			return result("command", false);
+		}
+
+		boolean known = true;
+
+		switch (command.toLowerCase()) {
+		case "clean":
+			if (isCleaning()) {
+				enter("st_cleanstop");
+			} else {
+				startCycle("st_clean");
+			}
+			break;
+
+		case "spot":
+			startCycle("st_clean_spot");
+			break;
+
+		case "max":
+			startCycle("st_clean_max");
+			break;
+
+		case "delayedclean":
+			delayMinutes = 30;
+			try {
+				delayMinutes = Integer.parseInt(parameter(query, "minutes"));
+			} catch (final NumberFormatException e) {
+			}
+			tcStatus.put("clean_delay", delayMinutes);
+			enter("st_delayed");
+			break;
+
+		case "dock":
+			if (!isOnBase()) {
+				enter("st_dock");
+			}
+			break;
+
+		case "leavehomebase":
+		case "drive_only":
+		case "drive":
+		case "forward":
+		case "spinleft":
+		case "spinright":
+		case "driveleft":
+		case "driveright":
+			if (isOnBase()) {
+				setHome(false);
+			}
+			if (!state.equals("st_remote")) {
+				enter("st_remote");
+			}
+			// Every drive command keeps the remote session alive.
+			inState = 0;
+			break;
+
+		case "drivestop":
+			if (state.equals("st_remote")) {
+				enter("st_stopped");
+			}
+			break;
+
+		case "poweroff":
+			enter("st_off");
+			break;
+
+		case "find_me":
+		case "drivenormal":
+		case "drivealways":
+			break;
+
+		case "vacuumdriveon":
+			tcStatus.put("vacuum_drive", 1);
+			break;
+
+		case "vacuumdriveoff":
+			tcStatus.put("vacuum_drive", 0);
+			break;
+
+		default:
+			known = false;
+			break;
+		}
+
+		refreshDerived();
+
+		return result(command, known);
+
+	}
+
+	private void startCycle(final String cleaningState) {
+
+		if (isOnBase()) {
+			setHome(false);
+		}
+		cleaningTime = 0;
+		enter(cleaningState);
+
+	}
+
+	private void enter(final String newState) {
+
+		state = newState;
+		inState = 0;
+
+	}
+
+	/**
+	 * Moves the simulation forward to the present.
+	 */
+	private void tick() {
+
+		final long now = System.nanoTime();
+		final double seconds = (now - lastTick) / 1e9 * timeScale;
+		lastTick = now;
+
+		if (seconds <= 0) {
+			return;
+		}
+
+		inState += seconds;
+
+		if (isCleaning()) {
+			charge -= CLEANING_DRAIN * seconds;
+			cleaningTime += seconds;
+			cleaningTimeTotal += seconds;
+			final int dockAt = (Integer) firmware.get("dock_at");
+			if (charge <= dockAt) {
+				enter("st_dock");
+			}
+		} else if (state.startsWith("st_base")) {
+			charge += CHARGE_RATE * seconds;
+			if (charge >= 100) {
+				charge = 100;
+				if (!state.equals("st_base")) {
+					enter("st_base");
+				}
+			} else if (charge >= 95 && !state.equals("st_base_trickle")) {
+				enter("st_base_trickle");
+			}
+		} else if (state.equals("st_dock")) {
+			charge -= CLEANING_DRAIN * seconds;
+			if (inState >= DOCKING_TIME) {
+				setHome(true);
+				enter(charge < 95 ? "st_base_full" : "st_base");
+			}
+		} else if (state.equals("st_remote")) {
+			charge -= CLEANING_DRAIN * seconds;
+			if (inState >= REMOTE_TIMEOUT) {
+				enter("st_stopped");
+			}
+		} else if (state.equals("st_delayed")) {
+			if (inState >= delayMinutes * 60) {
+				startCycle("st_clean");
+			}
+		} else if (!state.equals("st_off")) {
+			charge -= IDLE_DRAIN * seconds;
+			final int stopAt = (Integer) firmware.get("stop_at");
+			if (charge <= stopAt) {
+				enter("st_off");
+			}
+		}
+
+		charge = Math.max(0, Math.min(100, charge));
+
+		refreshDerived();
+
+	}
+
+	private boolean isCleaning() {
+
+		return state.startsWith("st_clean") && !state.equals("st_cleanstop");
+
+	}
+
+	private boolean isOnBase() {
+
+		return state.startsWith("st_base");
+
+	}
+
+	private void setHome(final boolean home) {
+
+		sensors.put("homebase_detected", home ? 1 : 0);
+		sensors.put("near_homebase", home ? 1 : 0);
+
+	}
+
+	/**
+	 * Copies the simulated values into the reported ones.
+	 */
+	private void refreshDerived() {
+
+		final int percent = (int) charge;
+		final int capacity = (Integer) powerStatus.get("capacity");
+
+		powerStatus.put("cleaner_state", state);
+		powerStatus.put("cleaning", isCleaning() ? 1 : 0);
+		powerStatus.put("charge", percent);
+		powerStatus.put("battery_charge", capacity * percent / 100);
+		powerStatus.put("low_power", percent <= (Integer) firmware.get("dock_at") ? 1 : 0);
+		powerStatus.put("voltage", 14000 + 28 * percent);
+		powerStatus.put("current", isOnBase() ? 1200 : state.equals("st_off") ? 0 : -1400);
+		sensors.put("mainbrush_current", isCleaning() ? 1 : 0);
+		sensors.put("sidebrush_current", isCleaning() ? 1 : 0);
+
+		if (isOnBase()) {
+			setHome(true);
+		}
+
+		tcStatus.put("cleaning_time", (int) (cleaningTime / 60));
+		tcStatus.put("cleaning_time_total", (int) (cleaningTimeTotal / 60));
+		tcStatus.put("cleaning_distance", (int) (cleaningTimeTotal * 0.3));
+		// Bin warning after 90 minutes of cleaning without a pickup.
+		tcStatus.put("bin_status", cleaningTime >= 90 * 60 ? 1 : 0);
+
+		final long minutes = System.currentTimeMillis() / 60000L;
+		firmware.put("time_h_m", String.format("%02d:%02d", minutes / 60 % 24, minutes % 60));
+
+	}
+
+	// Rendering \\
+	private String simpleStatus() {
+
+		final StringBuilder json = new StringBuilder(256);
+
+		json.append("{\"status\":{");
+		field(json, "name", name).append(',');
+		field(json, "battery_charge", powerStatus.get("battery_charge")).append(',');
+		field(json, "capacity", powerStatus.get("capacity")).append(',');
+		field(json, "cleaner_state", state).append(',');
+		field(json, "cleaning", powerStatus.get("cleaning")).append(',');
+		field(json, "schedule_serial_number", tcStatus.get("schedule_serial_number")).append(',');
+		field(json, "charge", powerStatus.get("charge")).append(',');
+		field(json, "near_homebase", sensors.get("near_homebase"));
+		json.append("},\"action\":\"status\",\"result\":\"success\"}");
+
+		return json.toString();
+
+	}
+
+	private String fullStatus() {
+
+		final StringBuilder json = new StringBuilder(1536);
+
+		json.append('{');
+		section(json, "firmware", firmware).append(',');
+		section(json, "power_status", powerStatus).append(',');
+		section(json, "tc_status", tcStatus).append(',');
+		section(json, "buttons", buttons).append(',');
+		section(json, "sensors", sensors).append(',');
+		section(json, "webview", webview).append(',');
+		json.append("\"action\":\"full_status\",\"result\":\"success\"}");
+
+		return json.toString();
+
+	}
+
+	private static String result(final String action, final boolean success) {
+
+		return "{\"action\":\"" + escape(action) + "\",\"result\":\"" + (success ? "success" : "fail") + "\"}";
+
+	}
+
+	private static StringBuilder section(final StringBuilder json, final String name, final Map<String, Object> values) {
+
+		json.append('"').append(name).append("\":{");
+
+		boolean first = true;
+		for (final Map.Entry<String, Object> entry : values.entrySet()) {
+			if (!first) {
+				json.append(',');
+			}
+			field(json, entry.getKey(), entry.getValue());
+			first = false;
+		}
+
+		return json.append('}');
+
+	}
+
+	private static StringBuilder field(final StringBuilder json, final String key, final Object value) {
+
+		json.append('"').append(key).append("\":");
+
+		if (value instanceof Number) {
+			json.append(value);
+		} else {
+			json.append('"').append(escape(String.valueOf(value))).append('"');
+		}
+
+		return json;
+
+	}
+
+	private static String escape(final String text) {
+
+		return text.replace("\\", "\\\\").replace("\"", "\\\"");
+
+	}
+
+	private static String parameter(final String query, final String key) {
+
+		for (final String pair : query.split("&")) {
+			final int equals = pair.indexOf('=');
+			if (equals > 0 && pair.substring(0, equals).equals(key)) {
+				return pair.substring(equals + 1);
+			}
+		}
+
+		return null;
+
+	}
+
+}
@@ -0,0 +1,50 @@
+package iRoomba;
+
+/**
+ * The Roomba's drive wheels, which can drop when it is lifted or drives over
+ * an edge.
+ */
+public enum Wheel {
+
+	/** Either wheel. */
+	ANY(StatusSnapshot.WHEEL_DROPS),
+	LEFT(1L << StatusSnapshot.WHEEL_DROP_LEFT),
+	RIGHT(1L << StatusSnapshot.WHEEL_DROP_RIGHT);
+
+	final long mask;
+
+	private Wheel(final long mask) {
+
+		this.mask = mask;
+
+	}
+
+	/**
+	 * Reads the names accepted by {@link Robot#wheelDropped(String)}, such as
+	 * "any", "l" or "right".
+	 *
+	 * @return The wheel, or null if the name is not known.
+	 */
+	public static Wheel of(final String name) {
+
+		switch (name.toLowerCase()) {
+		case "any":
+		case "all":
+		case "a":
+			return ANY;
+
+		case "left":
+		case "l":
+			return LEFT;
+
+		case "right":
+		case "r":
+			return RIGHT;
+
+		default:
+			return null;
+		}
+
+	}
+
+}